@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the rewriting of the wro4j-maven-plugin configuration done whenever the configuration is
+ * resolved : context folders parsing, output folders relocation and configuration merging, on
+ * configurations holding up to thousands of parameters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigurationCustomizerBenchmark {
+
+  private static final String[] OUTPUT_PARAMETERS = {"destinationFolder", "jsDestinationFolder",
+      "cssDestinationFolder", "groupNameMappingFile"};
+
+  @Param({"10", "100", "1000"})
+  int parameters;
+
+  private final File projectLocation = new File(System.getProperty("java.io.tmpdir"), "m2e-wro4j-benchmark");
+
+  private final File defaultOutputPathPrefix = new File(projectLocation, "target/webapp-1.0");
+
+  private final File webResourcesFolder = new File(projectLocation, "target/m2e-wtp/web-resources");
+
+  String contextFolders;
+
+  List<File> contextRoots;
+
+  Xpp3Dom configuration;
+
+  @Setup
+  public void setup() {
+    StringBuilder folders = new StringBuilder();
+    for (int i = 0; i < parameters; i++) {
+      if (i > 0) {
+        folders.append(i % 2 == 0 ? "," : ", ");
+      }
+      switch (i % 4) {
+        case 0:
+          folders.append("src/main/webapp").append(i);
+          break;
+        case 1:
+          folders.append(new File(projectLocation, "absolute/folder" + i).getAbsolutePath());
+          break;
+        case 2:
+          folders.append("../shared/./resources").append(i);
+          break;
+        default:
+          folders.append(" target/generated-resources/").append(i).append(' ');
+          break;
+      }
+    }
+    contextFolders = folders.toString();
+    contextRoots = ConfigurationCustomizer.parseContextRoots(projectLocation, contextFolders);
+
+    configuration = new Xpp3Dom("configuration");
+    for (int i = 0; i < parameters; i++) {
+      Xpp3Dom parameter = new Xpp3Dom("parameter" + i);
+      if (i % 10 == 0) {
+        // some nested parameters, like processor lists
+        for (int j = 0; j < 5; j++) {
+          Xpp3Dom child = new Xpp3Dom("item");
+          child.setValue("value" + j);
+          parameter.addChild(child);
+        }
+      } else {
+        parameter.setValue("value" + i);
+      }
+      configuration.addChild(parameter);
+    }
+    addParameter(configuration, ConfigurationCustomizer.CONTEXT_FOLDER, contextFolders);
+    addParameter(configuration, "destinationFolder", new File(defaultOutputPathPrefix, "resources").getPath());
+  }
+
+  private static void addParameter(Xpp3Dom configuration, String name, String value) {
+    Xpp3Dom parameter = new Xpp3Dom(name);
+    parameter.setValue(value);
+    configuration.addChild(parameter);
+  }
+
+  @Benchmark
+  public List<File> parseContextRoots() {
+    return ConfigurationCustomizer.parseContextRoots(projectLocation, contextFolders);
+  }
+
+  @Benchmark
+  public Xpp3Dom copy() {
+    return ConfigurationCustomizer.copy(configuration);
+  }
+
+  @Benchmark
+  public File getReplacementPath() throws IOException {
+    return ConfigurationCustomizer.getReplacementPath(new File(defaultOutputPathPrefix, "resources/css"),
+        webResourcesFolder, defaultOutputPathPrefix);
+  }
+
+  /**
+   * Everything done when a war project configuration is customized for m2e-wtp.
+   */
+  @Benchmark
+  public Xpp3Dom customize() throws IOException {
+    Xpp3Dom customConfiguration = ConfigurationCustomizer.copy(configuration);
+    ConfigurationCustomizer.fixContextFolders(customConfiguration, contextRoots);
+    for (String parameter : OUTPUT_PARAMETERS) {
+      ConfigurationCustomizer.customizeLocation(new File(defaultOutputPathPrefix, parameter), webResourcesFolder,
+          defaultOutputPathPrefix, customConfiguration, parameter);
+    }
+    return customConfiguration;
+  }
+}
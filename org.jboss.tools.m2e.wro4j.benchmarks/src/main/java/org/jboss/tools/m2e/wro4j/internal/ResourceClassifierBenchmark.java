@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares {@link ResourceClassifier} with the regular expressions previously used to detect wro4j
+ * descriptors and web resources, over 100k synthetic delta paths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResourceClassifierBenchmark {
+
+  private static final Pattern WRO4J_FILES_PATTERN = Pattern.compile("^(\\/?.*\\/)?wro\\.(xml|groovy|properties)$");
+
+  private static final Pattern WEB_RESOURCES_PATTERN = Pattern.compile("([^\\s]+(\\.(?i)(js|css|scss|sass|less|coffee|json|template))$)");
+
+  private static final String[] FOLDERS = {"", "js/", "css/", "vendor/jquery/", "WEB-INF/", "images/icons/",
+      "app/modules/admin/views/", "node_modules/some-lib/dist/"};
+
+  private static final String[] NAMES = {"app", "style", "jquery.min", "wro", "index", "logo", "bootstrap-theme",
+      "_variables"};
+
+  private static final String[] EXTENSIONS = {".js", ".css", ".less", ".scss", ".png", ".html", ".JS", ".xml",
+      ".properties", ".jsp", ".json", ".gif"};
+
+  private final ResourceClassifier classifier = ResourceClassifier.getDefault();
+
+  String[] paths;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(42);
+    paths = new String[100000];
+    for (int i = 0; i < paths.length; i++) {
+      String folder = FOLDERS[random.nextInt(FOLDERS.length)];
+      if (random.nextBoolean()) {
+        folder = folder.replace('/', '\\');
+      }
+      paths[i] = folder + NAMES[random.nextInt(NAMES.length)] + EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+    }
+  }
+
+  /**
+   * Former implementation : each path is made portable then matched against both patterns.
+   */
+  @Benchmark
+  public void regex(Blackhole blackhole) {
+    for (String path : paths) {
+      String portablePath = path.replace('\\', '/');
+      blackhole.consume(WRO4J_FILES_PATTERN.matcher(portablePath).matches());
+      blackhole.consume(WEB_RESOURCES_PATTERN.matcher(portablePath).matches());
+    }
+  }
+
+  @Benchmark
+  public void classifier(Blackhole blackhole) {
+    for (String path : paths) {
+      blackhole.consume(classifier.classify(path));
+    }
+  }
+}
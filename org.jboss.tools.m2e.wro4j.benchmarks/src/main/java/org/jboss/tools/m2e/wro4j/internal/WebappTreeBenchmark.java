@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.plexus.util.DirectoryScanner;
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures what a full build does before running the mojo, on synthetic webapp trees of 1k to 100k
+ * files : walking the context folder, classifying every file and digesting the web resources.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WebappTreeBenchmark {
+
+  private static final String[] EXTENSIONS = {".js", ".css", ".less", ".png", ".html", ".jsp", ".gif", ".json"};
+
+  @Param({"1000", "10000", "100000"})
+  int files;
+
+  private final ResourceClassifier classifier = ResourceClassifier.getDefault();
+
+  File webapp;
+
+  @Setup
+  public void setup() throws IOException {
+    webapp = File.createTempFile("m2e-wro4j-webapp", "");
+    webapp.delete();
+    Random random = new Random(42);
+    byte[] content = new byte[2048];
+    for (int i = 0; i < files; i++) {
+      // about 100 files per folder, 3 levels deep
+      File folder = new File(webapp, "module" + (i / 10000) + "/views" + (i / 1000 % 10) + "/part" + (i / 100 % 10));
+      if (!folder.isDirectory() && !folder.mkdirs()) {
+        throw new IOException("Can't create " + folder);
+      }
+      random.nextBytes(content);
+      FileUtils.fileWrite(new File(folder, "file" + i + EXTENSIONS[random.nextInt(EXTENSIONS.length)]),
+          "ISO-8859-1", new String(content, 0, 256 + random.nextInt(content.length - 256), "ISO-8859-1"));
+    }
+    File webInf = new File(webapp, "WEB-INF");
+    webInf.mkdirs();
+    FileUtils.fileWrite(new File(webInf, "wro.xml"), "UTF-8", "<groups/>");
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(webapp);
+  }
+
+  @Benchmark
+  public void scan(Blackhole blackhole) {
+    blackhole.consume(scanFiles());
+  }
+
+  @Benchmark
+  public void scanAndClassify(Blackhole blackhole) {
+    for (String file : scanFiles()) {
+      blackhole.consume(classifier.classify(file));
+    }
+  }
+
+  /**
+   * What a full build does to find out which web resources changed since the previous session.
+   */
+  @Benchmark
+  public void scanAndDigest(Blackhole blackhole) throws IOException {
+    for (String file : scanFiles()) {
+      if (classifier.isWebResource(file)) {
+        blackhole.consume(Crc64.digest(new File(webapp, file)));
+      }
+    }
+  }
+
+  private String[] scanFiles() {
+    DirectoryScanner ds = new DirectoryScanner();
+    ds.setBasedir(webapp);
+    ds.scan();
+    return ds.getIncludedFiles();
+  }
+}
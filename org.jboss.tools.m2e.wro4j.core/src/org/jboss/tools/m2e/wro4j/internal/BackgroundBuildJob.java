@@ -0,0 +1,329 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.MultiRule;
+import org.eclipse.m2e.core.MavenPlugin;
+import org.eclipse.m2e.core.embedder.ICallable;
+import org.eclipse.m2e.core.embedder.IMavenExecutionContext;
+import org.eclipse.osgi.util.NLS;
+import org.sonatype.plexus.build.incremental.BuildContext;
+import org.sonatype.plexus.build.incremental.DefaultBuildContext;
+import org.sonatype.plexus.build.incremental.ThreadBuildContext;
+
+/**
+ * Builds the wro4j groups dirtied by autobuilds in the background, once the workspace has been
+ * quiet for a while. Groups dirtied by successive autobuilds are coalesced in a single run, and a
+ * pending run is pushed back whenever a newer change comes in. Each wro4j execution of a project gets
+ * its own job. Failures are reported as {@link #PROBLEM_MARKER} markers on the pom, until the next
+ * run or foreground build of the execution.
+ */
+class BackgroundBuildJob extends Job {
+
+  static final String PROBLEM_MARKER = Wro4jProjectState.PLUGIN_ID + ".backgroundBuildProblem";
+
+  private static final String EXECUTION_ID_ATTRIBUTE = "executionId";
+
+  /**
+   * Jobs keyed by project and execution id
+   */
+  private static final Map<List<Object>, BackgroundBuildJob> JOBS = new ConcurrentHashMap<List<Object>, BackgroundBuildJob>();
+
+  private Request request;
+
+  /**
+   * Groups to build on the next run, <code>null</code> meaning all of them
+   */
+  private Set<String> pendingGroups = new TreeSet<String>();
+
+  private BackgroundBuildJob(IProject project) {
+    super(NLS.bind("Building wro4j groups of {0}", project.getName()));
+    setPriority(Job.BUILD);
+  }
+
+  static synchronized BackgroundBuildJob get(IProject project, String executionId) {
+    List<Object> key = Arrays.<Object> asList(project, executionId);
+    BackgroundBuildJob job = JOBS.get(key);
+    if (job == null) {
+      job = new BackgroundBuildJob(project);
+      JOBS.put(key, job);
+    }
+    return job;
+  }
+
+  /**
+   * Drops the pending run of the given execution, if any, and the problems of its previous runs,
+   * when its groups are about to be built in the foreground. The changes the dropped run was to
+   * build were already recorded as seen, so the foreground build must take its groups over.
+   *
+   * @return the groups of the dropped run, <code>null</code> meaning all of them
+   */
+  static Set<String> cancel(IFile pom, String executionId) {
+    BackgroundBuildJob job = JOBS.get(Arrays.<Object> asList(pom.getProject(), executionId));
+    Set<String> droppedGroups = job == null ? Collections.<String> emptySet() : job.clear();
+    deleteProblems(pom, executionId);
+    return droppedGroups;
+  }
+
+  private static void deleteProblems(IFile pom, String executionId) {
+    try {
+      for (IMarker marker : pom.findMarkers(PROBLEM_MARKER, false, IResource.DEPTH_ZERO)) {
+        if (executionId.equals(marker.getAttribute(EXECUTION_ID_ATTRIBUTE, null))) {
+          marker.delete();
+        }
+      }
+    } catch (CoreException e) {
+      // the pom is gone, and its markers with it
+    }
+  }
+
+  private static void addProblem(IFile pom, String executionId, String message) {
+    try {
+      IMarker marker = pom.createMarker(PROBLEM_MARKER);
+      marker.setAttribute(IMarker.MESSAGE, message);
+      marker.setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_ERROR);
+      marker.setAttribute(IMarker.LINE_NUMBER, 1);
+      marker.setAttribute(EXECUTION_ID_ATTRIBUTE, executionId);
+    } catch (CoreException e) {
+      // the pom is gone, so is the project
+    }
+  }
+
+  @Override
+  public boolean belongsTo(Object family) {
+    return family == BackgroundBuildJob.class || super.belongsTo(family);
+  }
+
+  /**
+   * Adds groups to build on the next run and (re)starts the quiet period.
+   *
+   * @param groups the groups to build, <code>null</code> for all of them
+   * @param delay the quiet period, in milliseconds
+   */
+  synchronized void submit(Request newRequest, Collection<String> groups, long delay) {
+    request = newRequest;
+    if (groups == null) {
+      pendingGroups = null;
+    } else if (pendingGroups != null) {
+      pendingGroups.addAll(groups);
+    }
+    // a newer delta supersedes the pending run
+    cancel();
+    if (getState() == Job.NONE) {
+      setRule(newRequest.getSchedulingRule());
+    }
+    schedule(delay);
+  }
+
+  /**
+   * @return the groups of the pending run, <code>null</code> meaning all of them
+   */
+  private synchronized Set<String> clear() {
+    cancel();
+    Set<String> droppedGroups = request == null ? Collections.<String> emptySet() : pendingGroups;
+    request = null;
+    pendingGroups = new TreeSet<String>();
+    return droppedGroups;
+  }
+
+  @Override
+  protected IStatus run(IProgressMonitor monitor) {
+    Request currentRequest;
+    Set<String> groups;
+    synchronized (this) {
+      if (monitor.isCanceled() || request == null) {
+        return Status.CANCEL_STATUS;
+      }
+      currentRequest = request;
+      groups = pendingGroups;
+      request = null;
+      pendingGroups = new TreeSet<String>();
+    }
+    try {
+      currentRequest.build(groups, monitor);
+    } catch (CoreException e) {
+      return e.getStatus();
+    }
+    return Status.OK_STATUS;
+  }
+
+  /**
+   * Everything needed to run the mojo outside of a workspace build.
+   */
+  static class Request {
+
+    private final MavenProject mavenProject;
+
+    private final IFile pom;
+
+    private final MojoExecution mojoExecution;
+
+    private final Xpp3Dom configuration;
+
+    private final ResolvedConfiguration resolvedConfiguration;
+
+    private final Wro4jProjectState state;
+
+    private final WroModel model;
+
+    /**
+     * @param configuration the customized mojo configuration, without targetGroups restriction
+     */
+    Request(MavenProject mavenProject, IFile pom, MojoExecution mojoExecution, Xpp3Dom configuration,
+        ResolvedConfiguration resolvedConfiguration, Wro4jProjectState state, WroModel model) {
+      this.mavenProject = mavenProject;
+      this.pom = pom;
+      this.mojoExecution = mojoExecution;
+      this.configuration = configuration;
+      this.resolvedConfiguration = resolvedConfiguration;
+      this.state = state;
+      this.model = model;
+    }
+
+    /**
+     * @return a rule allowing to refresh the output folders
+     */
+    ISchedulingRule getSchedulingRule() {
+      IWorkspace workspace = ResourcesPlugin.getWorkspace();
+      ISchedulingRule rule = null;
+      for (String parameter : new String[] {ResolvedConfiguration.DESTINATION_FOLDER,
+          ResolvedConfiguration.JS_DESTINATION_FOLDER, ResolvedConfiguration.CSS_DESTINATION_FOLDER}) {
+        File folder = resolvedConfiguration.getCustomLocation(parameter);
+        IContainer container = folder == null ? null
+            : workspace.getRoot().getContainerForLocation(Path.fromOSString(folder.getAbsolutePath()));
+        if (container != null) {
+          rule = MultiRule.combine(rule, workspace.getRuleFactory().refreshRule(container));
+        }
+      }
+      return rule;
+    }
+
+    void build(Set<String> groups, IProgressMonitor monitor) throws CoreException {
+      Collection<String> targetGroups = groups == null ? resolvedConfiguration.getBuildableGroups(model) : groups;
+      if (targetGroups.isEmpty()) {
+        return;
+      }
+      if (monitor.isCanceled()) {
+        // superseded while waiting for the scheduling rule, left to the next build
+        state.interruptGroups(groups);
+        return;
+      }
+      Xpp3Dom executionConfiguration = new Xpp3Dom(configuration);
+      ResolvedConfiguration.restrictTargetGroups(executionConfiguration, targetGroups);
+      final MojoExecution execution = ResolvedConfiguration.newExecution(mojoExecution, executionConfiguration);
+
+      TrackingBuildContext trackingContext = new TrackingBuildContext(new SkipUnchangedBuildContext(
+          new DefaultBuildContext()));
+      BuildContext previousContext = ThreadBuildContext.getContext();
+      ThreadBuildContext.setThreadBuildContext(trackingContext);
+      List<Throwable> errors;
+      try {
+        errors = execute(execution, monitor);
+      } catch (CoreException e) {
+        errors = Collections.<Throwable> singletonList(e);
+      } finally {
+        ThreadBuildContext.setThreadBuildContext(previousContext);
+      }
+      deleteProblems(pom, mojoExecution.getExecutionId());
+      if (errors.isEmpty()) {
+        state.recordBuild(targetGroups, state.computeFingerprints(targetGroups),
+            resolvedConfiguration.getGroupOutputs(targetGroups));
+        state.clearInterruptedGroups(groups == null ? null : targetGroups);
+      } else {
+        // their changes were recorded as seen, left to the next build whatever its delta
+        state.interruptGroups(groups);
+        for (Throwable error : errors) {
+          addProblem(pom, mojoExecution.getExecutionId(),
+              NLS.bind("Failed to build wro4j groups {0} : {1}", targetGroups, error.getMessage()));
+        }
+      }
+      try {
+        state.save();
+      } catch (IOException e) {
+        // Not fatal, the next session will just start with a full build
+      }
+      trackingContext.refreshChangedFiles(new WorkspaceRefreshContext(monitor));
+    }
+
+    /**
+     * @return the errors raised by the mojo, which m2e records in the session result rather than
+     *         throwing them
+     */
+    private List<Throwable> execute(final MojoExecution execution, IProgressMonitor monitor) throws CoreException {
+      return MavenPlugin.getMaven().createExecutionContext().execute(mavenProject, new ICallable<List<Throwable>>() {
+        public List<Throwable> call(IMavenExecutionContext context, IProgressMonitor monitor) throws CoreException {
+          MavenSession session = context.getSession();
+          int previousErrors = session.getResult().getExceptions().size();
+          MavenPlugin.getMaven().execute(session, execution, monitor);
+          List<Throwable> exceptions = session.getResult().getExceptions();
+          return new ArrayList<Throwable>(exceptions.subList(previousErrors, exceptions.size()));
+        }
+      }, monitor);
+    }
+  }
+
+  /**
+   * Refreshes files straight in the workspace, as there's no m2e build context out of a build.
+   */
+  private static class WorkspaceRefreshContext extends ForwardingBuildContext {
+
+    private final IProgressMonitor monitor;
+
+    WorkspaceRefreshContext(IProgressMonitor monitor) {
+      super(new DefaultBuildContext());
+      this.monitor = monitor;
+    }
+
+    @Override
+    public void refresh(File file) {
+      IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+      IResource resource = file.isDirectory() ? root.getContainerForLocation(Path.fromOSString(file.getAbsolutePath()))
+          : root.getFileForLocation(Path.fromOSString(file.getAbsolutePath()));
+      if (resource == null) {
+        return;
+      }
+      try {
+        resource.refreshLocal(IResource.DEPTH_INFINITE, monitor);
+      } catch (CoreException e) {
+        // the workspace will catch up on its next refresh
+      }
+    }
+  }
+}
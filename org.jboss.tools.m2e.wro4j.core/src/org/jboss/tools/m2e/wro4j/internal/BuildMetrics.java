@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * What a wro4j build did and where its time went : per phase timings, files and groups processed,
+ * bytes written or left untouched, and why it had to rebuild more than the changed groups, if it
+ * did. The metrics of each build are appended to a rolling JSON lines file under the project working
+ * location, off the build thread, which is where they are queried from.
+ */
+class BuildMetrics {
+
+  static final String METRICS_FILE = "wro4j-build-metrics.jsonl";
+
+  static final long MAX_FILE_SIZE = 512 * 1024;
+
+  private static final MetricsWriter WRITER = new MetricsWriter();
+
+  private final String project;
+
+  private final int kind;
+
+  private final long timestamp = System.currentTimeMillis();
+
+  private final long start = System.nanoTime();
+
+  private long phaseStart = start;
+
+  private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+
+  private final Map<String, Long> counters = new LinkedHashMap<String, Long>();
+
+  private String escalation;
+
+  private String outcome;
+
+  private long duration = -1;
+
+  BuildMetrics(String project, int kind) {
+    this.project = project;
+    this.kind = kind;
+  }
+
+  /**
+   * Records the time spent since the end of the previous phase, or since the build started.
+   */
+  synchronized void endPhase(String phase) {
+    long now = System.nanoTime();
+    Long previous = phases.get(phase);
+    phases.put(phase, Long.valueOf((previous == null ? 0 : previous.longValue()) + now - phaseStart));
+    phaseStart = now;
+  }
+
+  synchronized void count(String counter, long value) {
+    Long previous = counters.get(counter);
+    counters.put(counter, Long.valueOf((previous == null ? 0 : previous.longValue()) + value));
+  }
+
+  /**
+   * Records why everything had to be rebuilt, or not built incrementally : pom or descriptors
+   * change, new configuration, full build...
+   */
+  synchronized void escalate(String reason) {
+    if (escalation == null) {
+      escalation = reason;
+    }
+  }
+
+  synchronized void setOutcome(String outcome) {
+    this.outcome = outcome;
+  }
+
+  /**
+   * @return the time spent in each phase, in milliseconds
+   */
+  synchronized Map<String, Long> getPhases() {
+    Map<String, Long> millis = new LinkedHashMap<String, Long>();
+    for (Map.Entry<String, Long> phase : phases.entrySet()) {
+      millis.put(phase.getKey(), Long.valueOf(phase.getValue().longValue() / 1000000));
+    }
+    return millis;
+  }
+
+  /**
+   * Ends the build and queues it for the metrics file of the project, so even builds with nothing
+   * to do don't wait for the disk.
+   */
+  void publish(IProject iproject) {
+    synchronized (this) {
+      duration = (System.nanoTime() - start) / 1000000;
+    }
+    WRITER.queue(iproject, this);
+  }
+
+  private static void append(File file, List<BuildMetrics> metrics) throws IOException {
+    if (file.length() > MAX_FILE_SIZE) {
+      File rolled = new File(file.getPath() + ".1");
+      rolled.delete();
+      file.renameTo(rolled);
+    }
+    StringBuilder lines = new StringBuilder();
+    for (BuildMetrics buildMetrics : metrics) {
+      lines.append(buildMetrics.toJson()).append('\n');
+    }
+    OutputStream out = new FileOutputStream(file, true);
+    try {
+      out.write(lines.toString().getBytes("UTF-8"));
+    } finally {
+      IOUtil.close(out);
+    }
+  }
+
+  synchronized String toJson() {
+    StringBuilder json = new StringBuilder("{");
+    appendField(json, "project", quote(project));
+    appendField(json, "timestamp", String.valueOf(timestamp));
+    appendField(json, "kind", String.valueOf(kind));
+    appendField(json, "duration", String.valueOf(duration));
+    appendField(json, "outcome", outcome == null ? "null" : quote(outcome));
+    appendField(json, "escalation", escalation == null ? "null" : quote(escalation));
+    StringBuilder phasesJson = new StringBuilder("{");
+    for (Map.Entry<String, Long> phase : getPhases().entrySet()) {
+      appendField(phasesJson, phase.getKey(), phase.getValue().toString());
+    }
+    appendField(json, "phases", phasesJson.append('}').toString());
+    StringBuilder countersJson = new StringBuilder("{");
+    for (Map.Entry<String, Long> counter : counters.entrySet()) {
+      appendField(countersJson, counter.getKey(), counter.getValue().toString());
+    }
+    appendField(json, "counters", countersJson.append('}').toString());
+    return json.append('}').toString();
+  }
+
+  private static void appendField(StringBuilder json, String name, String value) {
+    if (json.length() > 1) {
+      json.append(',');
+    }
+    json.append(quote(name)).append(':').append(value);
+  }
+
+  private static String quote(String value) {
+    StringBuilder quoted = new StringBuilder("\"");
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        quoted.append('\\').append(c);
+      } else if (c < 0x20) {
+        quoted.append(String.format("\\u%04x", Integer.valueOf(c)));
+      } else {
+        quoted.append(c);
+      }
+    }
+    return quoted.append('"').toString();
+  }
+
+  @Override
+  public String toString() {
+    return toJson();
+  }
+
+  /**
+   * Appends the published metrics to the metrics file of their project, in batches.
+   */
+  private static class MetricsWriter extends Job {
+
+    private Map<IProject, List<BuildMetrics>> pending = new LinkedHashMap<IProject, List<BuildMetrics>>();
+
+    MetricsWriter() {
+      super("Writing wro4j build metrics");
+      setSystem(true);
+      setPriority(Job.DECORATE);
+    }
+
+    synchronized void queue(IProject project, BuildMetrics metrics) {
+      List<BuildMetrics> projectMetrics = pending.get(project);
+      if (projectMetrics == null) {
+        projectMetrics = new ArrayList<BuildMetrics>();
+        pending.put(project, projectMetrics);
+      }
+      projectMetrics.add(metrics);
+      schedule();
+    }
+
+    @Override
+    protected IStatus run(IProgressMonitor monitor) {
+      Map<IProject, List<BuildMetrics>> metrics;
+      synchronized (this) {
+        metrics = pending;
+        pending = new LinkedHashMap<IProject, List<BuildMetrics>>();
+      }
+      for (Map.Entry<IProject, List<BuildMetrics>> entry : metrics.entrySet()) {
+        IProject project = entry.getKey();
+        IPath location = project.isAccessible() ? project.getWorkingLocation(Wro4jProjectState.PLUGIN_ID) : null;
+        if (location == null) {
+          continue;
+        }
+        try {
+          append(location.append(METRICS_FILE).toFile(), entry.getValue());
+        } catch (IOException e) {
+          // metrics are best effort
+        }
+      }
+      return Status.OK_STATUS;
+    }
+  }
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * What a wro4j build of a project looks at in the workspace : its pom, its context folders and its
+ * output classes folder, possibly spread over several projects. Kept from one build to the next so
+ * builds triggered by unrelated changes, like java sources, can be told apart from the raw resource
+ * deltas, before resolving anything.
+ */
+class BuildScope {
+
+  private final IFile pom;
+
+  private final ResourceClassifier classifier;
+
+  private final Map<IProject, List<Root>> roots = new LinkedHashMap<IProject, List<Root>>();
+
+  private final Set<IProject> dependencies = new LinkedHashSet<IProject>();
+
+  private final List<IPath> outputPaths = new ArrayList<IPath>();
+
+  private boolean externalFolders;
+
+  BuildScope(IFile pom, ResourceClassifier classifier) {
+    this.pom = pom;
+    this.classifier = classifier;
+    roots.put(pom.getProject(), new ArrayList<Root>());
+  }
+
+  /**
+   * @param uriPrefix prefix of the uris of the files found under this root, ie.
+   *          <code>classpath:/</code>
+   */
+  void addRoot(IContainer container, String uriPrefix) {
+    IProject project = container.getProject();
+    List<Root> projectRoots = roots.get(project);
+    if (projectRoots == null) {
+      projectRoots = new ArrayList<Root>();
+      roots.put(project, projectRoots);
+      dependencies.add(project);
+    }
+    projectRoots.add(new Root(container, uriPrefix));
+  }
+
+  /**
+   * @param path the workspace path of a folder or a file wro4j writes to, its changes come from
+   *          the build itself
+   */
+  void addOutput(IPath path) {
+    outputPaths.add(path);
+  }
+
+  /**
+   * Some context folders lie outside of the workspace, so resource deltas don't tell everything.
+   */
+  void setExternalFolders(boolean externalFolders) {
+    this.externalFolders = externalFolders;
+  }
+
+  boolean hasExternalFolders() {
+    return externalFolders;
+  }
+
+  /**
+   * @return the projects whose deltas must be checked, the project being built first
+   */
+  Set<IProject> getProjects() {
+    return roots.keySet();
+  }
+
+  /**
+   * @return the other projects holding context folders
+   */
+  Set<IProject> getDependencies() {
+    return new LinkedHashSet<IProject>(dependencies);
+  }
+
+  /**
+   * @param delta the delta of one of the projects of the scope, <code>null</code> if unknown
+   * @return <code>true</code> if the delta might hold changes to the pom, a wro4j descriptor or a
+   *         web resource
+   */
+  boolean isAffectedBy(IProject project, IResourceDelta delta) {
+    if (delta == null) {
+      return true;
+    }
+    if (project.equals(pom.getProject()) && delta.findMember(pom.getProjectRelativePath()) != null) {
+      return true;
+    }
+    List<Root> projectRoots = roots.get(project);
+    if (projectRoots == null || projectRoots.isEmpty()) {
+      return false;
+    }
+    Map<String, File> changedFiles = new HashMap<String, File>();
+    ResourceDeltaCollector collector = new ResourceDeltaCollector(changedFiles, classifier);
+    for (Root root : projectRoots) {
+      collector.addRoot(root.container, root.uriPrefix);
+    }
+    for (IPath outputPath : outputPaths) {
+      collector.addOutput(outputPath);
+    }
+    try {
+      delta.accept(collector);
+    } catch (CoreException e) {
+      return true;
+    }
+    for (String file : changedFiles.keySet()) {
+      if (classifier.classify(file) != ResourceClassifier.Kind.IGNORED) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static class Root {
+
+    private final IContainer container;
+
+    private final String uriPrefix;
+
+    Root(IContainer container, String uriPrefix) {
+      this.container = container;
+      this.uriPrefix = uriPrefix;
+    }
+  }
+}
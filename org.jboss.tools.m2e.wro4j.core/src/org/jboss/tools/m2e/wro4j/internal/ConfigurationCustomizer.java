@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.codehaus.plexus.util.xml.Xpp3DomUtils;
+
+/**
+ * Rewrites wro4j-maven-plugin configurations so the mojo reads and writes where m2e-wtp expects it.
+ * Only depends on plain files and {@link Xpp3Dom}, so it can be exercised outside of Eclipse.
+ */
+class ConfigurationCustomizer {
+
+  static final String CONTEXT_FOLDER = "contextFolder";
+
+  static final String TOKEN_SEPARATOR = ",\\s*";
+
+  private ConfigurationCustomizer() {
+  }
+
+  /**
+   * @return a copy of the given mojo configuration, to be customized
+   */
+  static Xpp3Dom copy(Xpp3Dom configuration) {
+    Xpp3Dom copy = new Xpp3Dom("configuration");
+    Xpp3DomUtils.mergeXpp3Dom(copy, configuration);
+    return copy;
+  }
+
+  /**
+   * Parses the comma separated context folders of wro4j, relative folders being resolved against
+   * the project location.
+   *
+   * @return the context folders, <code>src/main/webapp</code> if none is set
+   */
+  static List<File> parseContextRoots(File projectLocation, String contextRoots) {
+    List<File> locations = new ArrayList<File>();
+    if (contextRoots != null) {
+      for (String cr : contextRoots.split(TOKEN_SEPARATOR)) {
+        String location = cr.trim();
+        if (location.length() > 0) {
+          File l = new File(location);
+          if (l.isAbsolute()) {
+            locations.add(l);
+          } else {
+            locations.add(normalize(new File(projectLocation, location)));
+          }
+        }
+      }
+    }
+    if (locations.isEmpty()) {
+      locations.add(new File("src/main/webapp"));
+    }
+    return Collections.unmodifiableList(locations);
+  }
+
+  /**
+   * Sets absolute context folders, as the mojo isn't executed from the project directory.
+   */
+  static void fixContextFolders(Xpp3Dom configuration, Collection<File> contextFolders) {
+    if (contextFolders == null || contextFolders.isEmpty()) {
+      return;
+    }
+    StringBuilder customContextFolders = new StringBuilder();
+    boolean addComma = false;
+    for (File folder : contextFolders) {
+      if (addComma) {
+        customContextFolders.append(", ");
+      }
+      customContextFolders.append(folder.getAbsolutePath().replace('\\', '/'));
+      addComma = true;
+    }
+    setValue(configuration, CONTEXT_FOLDER, customContextFolders.toString());
+  }
+
+  /**
+   * Moves an output location from the default war directory to the m2e-wtp web resources folder.
+   */
+  static void customizeLocation(File originalDestinationFolder, File webResourcesFolder,
+      File defaultOutputPathPrefix, Xpp3Dom configuration, String parameterName) throws IOException {
+    if (originalDestinationFolder != null) {
+      File customPath = getReplacementPath(originalDestinationFolder, webResourcesFolder, defaultOutputPathPrefix);
+      if (customPath != null) {
+        setValue(configuration, parameterName, customPath.getPath());
+      }
+    }
+  }
+
+  /**
+   * @return the location matching <code>originalFolder</code> under the web resources folder, or
+   *         <code>null</code> if it's not under the default output folder
+   */
+  static File getReplacementPath(File originalFolder, File webResourcesFolder, File defaultOutputPathPrefix)
+      throws IOException {
+    String originalPath = originalFolder.getCanonicalPath();
+    String prefix = normalize(defaultOutputPathPrefix).getPath();
+    if (originalPath.equals(prefix)) {
+      return webResourcesFolder;
+    }
+    if (!prefix.endsWith(File.separator)) {
+      prefix += File.separator;
+    }
+    if (!originalPath.startsWith(prefix)) {
+      return null;
+    }
+    return new File(webResourcesFolder, originalPath.substring(prefix.length()));
+  }
+
+  private static void setValue(Xpp3Dom configuration, String parameterName, String value) {
+    Xpp3Dom dom = configuration.getChild(parameterName);
+    if (dom == null) {
+      dom = new Xpp3Dom(parameterName);
+      configuration.addChild(dom);
+    }
+    dom.setValue(value);
+  }
+
+  /**
+   * @return the absolute file, without <code>.</code> nor <code>..</code> segments, without
+   *         resolving links
+   */
+  private static File normalize(File file) {
+    String path = file.getAbsolutePath();
+    if (path.indexOf(File.separator + ".") < 0) {
+      return new File(path);
+    }
+    return new File(file.getAbsoluteFile().toURI().normalize());
+  }
+}
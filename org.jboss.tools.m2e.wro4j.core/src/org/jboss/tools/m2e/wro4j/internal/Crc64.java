@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.zip.Checksum;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * CRC-64 checksum (ECMA-182 polynomial, as used by xz), used to fingerprint resources, models
+ * and generated files. Not a cryptographic hash, only meant to detect content changes.
+ */
+class Crc64 implements Checksum {
+
+  private static final long POLY = 0xC96C5795D7870F42L;
+
+  private static final long[] TABLE = new long[256];
+
+  static {
+    for (int i = 0; i < TABLE.length; i++) {
+      long crc = i;
+      for (int j = 0; j < 8; j++) {
+        crc = (crc & 1) == 1 ? (crc >>> 1) ^ POLY : crc >>> 1;
+      }
+      TABLE[i] = crc;
+    }
+  }
+
+  private long crc = -1;
+
+  public void update(int b) {
+    crc = TABLE[(int) ((crc ^ b) & 0xFF)] ^ (crc >>> 8);
+  }
+
+  public void update(byte[] b, int off, int len) {
+    long value = crc;
+    int end = off + len;
+    for (int i = off; i < end; i++) {
+      value = TABLE[(int) ((value ^ b[i]) & 0xFF)] ^ (value >>> 8);
+    }
+    crc = value;
+  }
+
+  public void update(byte[] b) {
+    update(b, 0, b.length);
+  }
+
+  public void update(String value) {
+    try {
+      update(value.getBytes("UTF-8"));
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public void update(long value) {
+    for (int i = 0; i < 8; i++) {
+      update((int) (value >>> (i * 8)));
+    }
+  }
+
+  public long getValue() {
+    return ~crc;
+  }
+
+  public void reset() {
+    crc = -1;
+  }
+
+  static long digest(String value) {
+    Crc64 crc = new Crc64();
+    crc.update(value);
+    return crc.getValue();
+  }
+
+  static long digest(File file) throws IOException {
+    Crc64 crc = new Crc64();
+    InputStream in = new FileInputStream(file);
+    try {
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) > -1) {
+        crc.update(buffer, 0, read);
+      }
+    } finally {
+      IOUtil.close(in);
+    }
+    return crc.getValue();
+  }
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Content digests of a set of files, used to tell real changes from files that were only touched
+ * or rewritten with the same bytes (branch switches, formatters, ...). Files are only read when
+ * their size or timestamp changed since they were last recorded.
+ */
+class DigestStore implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+  /**
+   * Records the current content of a file.
+   *
+   * @param key the file key, usually its uri relative to a context folder
+   * @return <code>true</code> if the file was added, deleted or if its content changed since it
+   *         was last recorded
+   */
+  synchronized boolean update(String key, File file) {
+    Entry previous = entries.get(key);
+    if (!file.isFile()) {
+      return entries.remove(key) != null;
+    }
+    long length = file.length();
+    long lastModified = file.lastModified();
+    if (previous != null && previous.length == length && previous.lastModified == lastModified) {
+      return false;
+    }
+    long digest;
+    try {
+      digest = Crc64.digest(file);
+    } catch (IOException e) {
+      // Can't tell, consider it changed
+      entries.remove(key);
+      return true;
+    }
+    entries.put(key, new Entry(length, lastModified, digest));
+    return previous == null || previous.digest != digest;
+  }
+
+  synchronized boolean contains(String key) {
+    return entries.containsKey(key);
+  }
+
+  synchronized boolean isEmpty() {
+    return entries.isEmpty();
+  }
+
+  synchronized void clear() {
+    entries.clear();
+  }
+
+  synchronized void retainAll(Set<String> keys) {
+    entries.keySet().retainAll(keys);
+  }
+
+  /**
+   * @return the content digest of the given file, or <code>null</code> if it isn't recorded
+   */
+  synchronized Long getDigest(String key) {
+    Entry entry = entries.get(key);
+    return entry == null ? null : Long.valueOf(entry.digest);
+  }
+
+  /**
+   * @return a live view of the keys of the recorded files, not to be walked while files are
+   *         recorded
+   */
+  synchronized Set<String> getKeys() {
+    return Collections.unmodifiableSet(entries.keySet());
+  }
+
+  private static class Entry implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long length;
+
+    private final long lastModified;
+
+    private final long digest;
+
+    Entry(long length, long lastModified, long digest) {
+      this.length = length;
+      this.lastModified = lastModified;
+      this.digest = digest;
+    }
+  }
+}
@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IncrementalProjectBuilder;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.resources.WorkspaceJob;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Polls the context folders lying outside of the workspace, which produce no resource delta, so
+ * incremental builds get the files changed there instead of scanning the whole folders. A build of
+ * the project is requested whenever something changes, if the workspace is autobuilding.
+ */
+class ExternalFolderWatcher extends Job {
+
+  private static final Map<IProject, ExternalFolderWatcher> WATCHERS = new ConcurrentHashMap<IProject, ExternalFolderWatcher>();
+
+  private final IProject project;
+
+  private ResourceClassifier classifier;
+
+  private long interval;
+
+  /**
+   * Last known state of the files under each watched folder : last modification and length
+   */
+  private final Map<File, Map<String, long[]>> snapshots = new HashMap<File, Map<String, long[]>>();
+
+  /**
+   * Files changed under each watched folder since the previous build
+   */
+  private final Map<File, Map<String, File>> changes = new HashMap<File, Map<String, File>>();
+
+  /**
+   * Folders whose previous state is unknown, they must be scanned on the next build
+   */
+  private final Set<File> freshFolders = new HashSet<File>();
+
+  private ExternalFolderWatcher(IProject project) {
+    super(NLS.bind("Watching wro4j context folders of {0}", project.getName()));
+    this.project = project;
+    setSystem(true);
+    setPriority(Job.DECORATE);
+  }
+
+  static synchronized ExternalFolderWatcher get(IProject project) {
+    ExternalFolderWatcher watcher = WATCHERS.get(project);
+    if (watcher == null) {
+      watcher = new ExternalFolderWatcher(project);
+      WATCHERS.put(project, watcher);
+    }
+    return watcher;
+  }
+
+  /**
+   * @return the watcher of the given project, or <code>null</code> if it has none
+   */
+  static ExternalFolderWatcher find(IProject project) {
+    return WATCHERS.get(project);
+  }
+
+  static synchronized void stop(IProject project) {
+    ExternalFolderWatcher watcher = WATCHERS.remove(project);
+    if (watcher != null) {
+      watcher.cancel();
+    }
+  }
+
+  /**
+   * Sets the folders to watch, folders which were already watched keep their pending changes.
+   *
+   * @param pollingInterval the polling interval, in milliseconds
+   */
+  void watch(Collection<File> folders, ResourceClassifier resourceClassifier, long pollingInterval) {
+    synchronized (this) {
+      classifier = resourceClassifier;
+      interval = pollingInterval;
+      snapshots.keySet().retainAll(folders);
+      changes.keySet().retainAll(folders);
+      freshFolders.retainAll(folders);
+    }
+    for (File folder : folders) {
+      boolean known;
+      synchronized (this) {
+        known = snapshots.containsKey(folder);
+      }
+      if (!known) {
+        Map<String, long[]> snapshot = takeSnapshot(folder);
+        synchronized (this) {
+          snapshots.put(folder, snapshot);
+          changes.put(folder, new LinkedHashMap<String, File>());
+          freshFolders.add(folder);
+        }
+      }
+    }
+    if (getState() == Job.NONE) {
+      schedule(pollingInterval);
+    }
+  }
+
+  /**
+   * @return the files added, changed or removed under the given folder since the previous call,
+   *         indexed by their path relative to the folder, or <code>null</code> if it's not known,
+   *         the folder must then be scanned
+   */
+  synchronized Map<String, File> takeChanges(File folder) {
+    Map<String, File> folderChanges = changes.get(folder);
+    if (folderChanges == null || freshFolders.remove(folder)) {
+      if (folderChanges != null) {
+        folderChanges.clear();
+      }
+      return null;
+    }
+    changes.put(folder, new LinkedHashMap<String, File>());
+    return folderChanges;
+  }
+
+  /**
+   * @return <code>true</code> if files changed under a watched folder since the previous build, or
+   *         if a folder must be scanned
+   */
+  synchronized boolean hasPendingChanges() {
+    if (!freshFolders.isEmpty()) {
+      return true;
+    }
+    for (Map<String, File> folderChanges : changes.values()) {
+      if (!folderChanges.isEmpty()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  protected IStatus run(IProgressMonitor monitor) {
+    if (!project.isAccessible()) {
+      stop(project);
+      return Status.OK_STATUS;
+    }
+    Set<File> folders;
+    synchronized (this) {
+      folders = new HashSet<File>(snapshots.keySet());
+    }
+    boolean changed = false;
+    for (File folder : folders) {
+      if (monitor.isCanceled()) {
+        return Status.CANCEL_STATUS;
+      }
+      Map<String, long[]> snapshot = takeSnapshot(folder);
+      synchronized (this) {
+        Map<String, long[]> previous = snapshots.get(folder);
+        Map<String, File> folderChanges = changes.get(folder);
+        if (previous == null || folderChanges == null) {
+          // no longer watched
+          continue;
+        }
+        for (Map.Entry<String, long[]> file : snapshot.entrySet()) {
+          long[] state = previous.remove(file.getKey());
+          if (state == null || state[0] != file.getValue()[0] || state[1] != file.getValue()[1]) {
+            folderChanges.put(file.getKey(), new File(folder, file.getKey()));
+            changed = true;
+          }
+        }
+        for (String removed : previous.keySet()) {
+          folderChanges.put(removed, new File(folder, removed));
+          changed = true;
+        }
+        snapshots.put(folder, snapshot);
+      }
+    }
+    if (changed && ResourcesPlugin.getWorkspace().isAutoBuilding()) {
+      new BuildJob(project).schedule();
+    }
+    if (WATCHERS.get(project) == this) {
+      schedule(interval);
+    }
+    return Status.OK_STATUS;
+  }
+
+  private Map<String, long[]> takeSnapshot(File folder) {
+    ResourceClassifier currentClassifier;
+    synchronized (this) {
+      currentClassifier = classifier;
+    }
+    Map<String, long[]> snapshot = new HashMap<String, long[]>();
+    addFiles(folder, "", currentClassifier, snapshot);
+    return snapshot;
+  }
+
+  private static void addFiles(File folder, String prefix, ResourceClassifier classifier, Map<String, long[]> snapshot) {
+    File[] files = folder.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      String path = prefix + file.getName();
+      if (file.isDirectory()) {
+        if (!classifier.isPruned(path)) {
+          addFiles(file, path + File.separator, classifier, snapshot);
+        }
+      } else if (classifier.classify(path) != ResourceClassifier.Kind.IGNORED) {
+        snapshot.put(path, new long[] {file.lastModified(), file.length()});
+      }
+    }
+  }
+
+  /**
+   * Builds the project once changes were seen in its external context folders.
+   */
+  private static class BuildJob extends WorkspaceJob {
+
+    private final IProject project;
+
+    BuildJob(IProject project) {
+      super(NLS.bind("Building {0}", project.getName()));
+      this.project = project;
+      setRule(ResourcesPlugin.getWorkspace().getRuleFactory().buildRule());
+    }
+
+    @Override
+    public boolean belongsTo(Object family) {
+      return family == ExternalFolderWatcher.class || super.belongsTo(family);
+    }
+
+    @Override
+    public IStatus runInWorkspace(IProgressMonitor monitor) throws CoreException {
+      if (project.isAccessible()) {
+        project.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor);
+      }
+      return Status.OK_STATUS;
+    }
+  }
+}
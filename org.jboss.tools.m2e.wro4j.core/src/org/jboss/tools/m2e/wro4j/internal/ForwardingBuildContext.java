@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.codehaus.plexus.util.Scanner;
+import org.sonatype.plexus.build.incremental.BuildContext;
+
+/**
+ * {@link BuildContext} forwarding every call to another build context, meant to be subclassed to
+ * alter some of them.
+ */
+abstract class ForwardingBuildContext implements BuildContext {
+
+  private final BuildContext delegate;
+
+  ForwardingBuildContext(BuildContext delegate) {
+    this.delegate = delegate;
+  }
+
+  protected BuildContext getDelegate() {
+    return delegate;
+  }
+
+  public boolean hasDelta(String relpath) {
+    return delegate.hasDelta(relpath);
+  }
+
+  public boolean hasDelta(File file) {
+    return delegate.hasDelta(file);
+  }
+
+  @SuppressWarnings("rawtypes")
+  public boolean hasDelta(List relpaths) {
+    return delegate.hasDelta(relpaths);
+  }
+
+  public void refresh(File file) {
+    delegate.refresh(file);
+  }
+
+  public OutputStream newFileOutputStream(File file) throws IOException {
+    return delegate.newFileOutputStream(file);
+  }
+
+  public Scanner newScanner(File basedir) {
+    return delegate.newScanner(basedir);
+  }
+
+  public Scanner newDeleteScanner(File basedir) {
+    return delegate.newDeleteScanner(basedir);
+  }
+
+  public Scanner newScanner(File basedir, boolean ignoreDelta) {
+    return delegate.newScanner(basedir, ignoreDelta);
+  }
+
+  public boolean isIncremental() {
+    return delegate.isIncremental();
+  }
+
+  public void setValue(String key, Object value) {
+    delegate.setValue(key, value);
+  }
+
+  public Object getValue(String key) {
+    return delegate.getValue(key);
+  }
+
+  @SuppressWarnings("deprecation")
+  public void addWarning(File file, int line, int column, String message, Throwable cause) {
+    delegate.addWarning(file, line, column, message, cause);
+  }
+
+  @SuppressWarnings("deprecation")
+  public void addError(File file, int line, int column, String message, Throwable cause) {
+    delegate.addError(file, line, column, message, cause);
+  }
+
+  public void addMessage(File file, int line, int column, String message, int severity, Throwable cause) {
+    delegate.addMessage(file, line, column, message, severity, cause);
+  }
+
+  public void removeMessages(File file) {
+    delegate.removeMessages(file);
+  }
+
+  public boolean isUptodate(File target, File source) {
+    return delegate.isUptodate(target, source);
+  }
+}
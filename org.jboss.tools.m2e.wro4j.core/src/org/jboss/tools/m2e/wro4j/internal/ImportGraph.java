@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * References between stylesheets : LESS/SASS/CSS <code>@import</code> and css <code>url()</code>,
+ * so a change to a partial which is not declared in any group can be mapped to the groups of the
+ * stylesheets pulling it, directly or transitively.
+ */
+class ImportGraph implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final String[] STYLESHEET_EXTENSIONS = {".css", ".less", ".scss", ".sass"};
+
+  private static final Pattern IMPORT_PATTERN = Pattern.compile("@import\\s+([^;\\n]+)");
+
+  private static final Pattern QUOTED_PATTERN = Pattern.compile("[\"']([^\"']+)[\"']");
+
+  private static final Pattern URL_PATTERN = Pattern.compile("url\\(\\s*[\"']?([^\"')]+?)[\"']?\\s*\\)");
+
+  /**
+   * For each stylesheet, the uris of the resources it might reference
+   */
+  private final Map<String, Set<String>> references = new HashMap<String, Set<String>>();
+
+  private transient Map<String, Set<String>> referrers;
+
+  /**
+   * Records the references of a resource, if it's a stylesheet.
+   *
+   * @param uri the normalized resource uri
+   */
+  synchronized void update(String uri, File file) {
+    referrers = null;
+    if (!isStylesheet(uri) || !file.isFile()) {
+      references.remove(uri);
+      return;
+    }
+    try {
+      Set<String> uris = parseReferences(uri, FileUtils.fileRead(file, "UTF-8"));
+      if (uris.isEmpty()) {
+        references.remove(uri);
+      } else {
+        references.put(uri, uris);
+      }
+    } catch (IOException e) {
+      references.remove(uri);
+    }
+  }
+
+  synchronized void retainAll(Set<String> uris) {
+    referrers = null;
+    references.keySet().retainAll(uris);
+  }
+
+  synchronized void clear() {
+    referrers = null;
+    references.clear();
+  }
+
+  /**
+   * @return the given resource and the stylesheets referencing it, directly or transitively
+   */
+  synchronized Set<String> getDependents(String uri) {
+    if (referrers == null) {
+      referrers = new HashMap<String, Set<String>>();
+      for (Map.Entry<String, Set<String>> entry : references.entrySet()) {
+        for (String reference : entry.getValue()) {
+          Set<String> referrersOf = referrers.get(reference);
+          if (referrersOf == null) {
+            referrersOf = new HashSet<String>();
+            referrers.put(reference, referrersOf);
+          }
+          referrersOf.add(entry.getKey());
+        }
+      }
+    }
+    Set<String> dependents = new HashSet<String>();
+    LinkedList<String> queue = new LinkedList<String>();
+    queue.add(uri);
+    while (!queue.isEmpty()) {
+      String current = queue.removeFirst();
+      if (dependents.add(current)) {
+        Set<String> referrersOf = referrers.get(current);
+        if (referrersOf != null) {
+          queue.addAll(referrersOf);
+        }
+      }
+    }
+    return dependents;
+  }
+
+  /**
+   * @return the given resources and the resources their stylesheets reference, directly or
+   *         transitively
+   */
+  synchronized Set<String> getReferences(Collection<String> uris) {
+    Set<String> references = new HashSet<String>();
+    LinkedList<String> queue = new LinkedList<String>(uris);
+    while (!queue.isEmpty()) {
+      String current = queue.removeFirst();
+      if (references.add(current)) {
+        Set<String> referenced = this.references.get(current);
+        if (referenced != null) {
+          queue.addAll(referenced);
+        }
+      }
+    }
+    return references;
+  }
+
+  /**
+   * @return the normalized uris a stylesheet might reference, including the partials and
+   *         extensions implied by LESS and SASS imports
+   */
+  static Set<String> parseReferences(String uri, String content) {
+    Set<String> uris = new HashSet<String>();
+    Matcher imports = IMPORT_PATTERN.matcher(content);
+    while (imports.find()) {
+      String statement = imports.group(1);
+      Matcher quoted = QUOTED_PATTERN.matcher(statement);
+      while (quoted.find()) {
+        addImport(uri, quoted.group(1), uris);
+      }
+    }
+    Matcher urls = URL_PATTERN.matcher(content);
+    while (urls.find()) {
+      String resolved = resolve(uri, urls.group(1));
+      if (resolved != null) {
+        uris.add(resolved);
+      }
+    }
+    return uris;
+  }
+
+  private static void addImport(String uri, String path, Set<String> uris) {
+    String resolved = resolve(uri, path);
+    if (resolved == null) {
+      return;
+    }
+    uris.add(resolved);
+    int slash = resolved.lastIndexOf('/');
+    String folder = resolved.substring(0, slash + 1);
+    String name = resolved.substring(slash + 1);
+    boolean hasExtension = isStylesheet(name);
+    for (String extension : STYLESHEET_EXTENSIONS) {
+      String candidate = hasExtension ? name : name + extension;
+      uris.add(folder + candidate);
+      // SASS partials
+      uris.add(folder + "_" + candidate);
+      if (hasExtension) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * @return the normalized uri of a reference, or <code>null</code> for remote or inlined resources
+   */
+  private static String resolve(String uri, String path) {
+    path = path.trim();
+    if (path.length() == 0 || path.startsWith("//") || path.startsWith("#") || path.indexOf(':') > 0) {
+      return null;
+    }
+    // query strings and fragments, mostly seen in font urls
+    int end = path.indexOf('?');
+    if (end < 0) {
+      end = path.indexOf('#');
+    }
+    if (end >= 0) {
+      path = path.substring(0, end);
+    }
+    String prefix = "";
+    String base = uri;
+    if (uri.startsWith(WroModel.CLASSPATH_PREFIX)) {
+      prefix = WroModel.CLASSPATH_PREFIX;
+      base = uri.substring(prefix.length());
+    }
+    try {
+      String resolved = new URI(null, null, base, null).resolve(new URI(null, null, path, null)).getPath();
+      if (resolved == null || resolved.startsWith("/..")) {
+        return null;
+      }
+      return WroModel.normalize(prefix + resolved);
+    } catch (URISyntaxException e) {
+      return null;
+    }
+  }
+
+  private static boolean isStylesheet(String uri) {
+    for (String extension : STYLESHEET_EXTENSIONS) {
+      if (uri.endsWith(extension)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
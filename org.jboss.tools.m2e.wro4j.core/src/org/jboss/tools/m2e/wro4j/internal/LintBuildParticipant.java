@@ -0,0 +1,386 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.maven.plugin.MojoExecution;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IncrementalProjectBuilder;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.m2e.core.MavenPlugin;
+import org.eclipse.m2e.core.project.IMavenProjectFacade;
+import org.eclipse.m2e.core.project.configurator.MojoExecutionBuildParticipant;
+import org.eclipse.osgi.util.NLS;
+import org.sonatype.plexus.build.incremental.BuildContext;
+import org.sonatype.plexus.build.incremental.ThreadBuildContext;
+
+/**
+ * m2e build participant for the wro4j lint goals : csslint, jslint and jshint. Only the groups
+ * holding files whose content changed since they were last linted are linted, partitions of them
+ * concurrently, and the problems wro4j reports are turned into markers on the files themselves.
+ * Problems are kept by content digest, so a file reverted to a previously linted content isn't
+ * linted again.
+ */
+class LintBuildParticipant extends MojoExecutionBuildParticipant {
+
+  static final Set<String> GOALS = new HashSet<String>(Arrays.asList("csslint", "jslint", "jshint"));
+
+  private static final String CSSLINT = "csslint";
+
+  private static final String REPORT_FILE = "reportFile";
+
+  private static final String FAIL_NEVER = "failNever";
+
+  private static final String REPORTS_FOLDER = "wro4j-lint";
+
+  private static final int MAX_CACHED_RESULTS = 1000;
+
+  private ResolvedConfiguration resolvedConfiguration;
+
+  private WroModel model;
+
+  private long modelStamp;
+
+  /**
+   * Key of the configuration the results were found with
+   */
+  private long configurationKey;
+
+  /**
+   * Content digest of each file when it was last linted
+   */
+  private final Map<String, Long> lintedDigests = new HashMap<String, Long>();
+
+  /**
+   * Problems found for each content digest, least recently used first
+   */
+  private final Map<Long, List<LintReport.Problem>> results = new LinkedHashMap<Long, List<LintReport.Problem>>(16,
+      0.75f, true) {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Long, List<LintReport.Problem>> eldest) {
+      return size() > MAX_CACHED_RESULTS;
+    }
+  };
+
+  LintBuildParticipant(MojoExecution execution) {
+    super(execution, true);
+  }
+
+  static boolean isLintGoal(MojoExecution execution) {
+    return GOALS.contains(execution.getGoal());
+  }
+
+  @Override
+  public Set<IProject> build(int kind, IProgressMonitor monitor) throws Exception {
+    MojoExecution mojoExecution = getMojoExecution();
+    if (mojoExecution == null) {
+      return null;
+    }
+    IMavenProjectFacade facade = getMavenProjectFacade();
+    boolean fullBuild = IncrementalProjectBuilder.FULL_BUILD == kind || IncrementalProjectBuilder.CLEAN_BUILD == kind;
+    long pomStamp = facade.getPom().getModificationStamp();
+    if (fullBuild || resolvedConfiguration == null || !resolvedConfiguration.isResolvedFor(mojoExecution, pomStamp)) {
+      resolvedConfiguration = ResolvedConfiguration.resolve(facade, getSession(), mojoExecution);
+    }
+    ResolvedConfiguration configuration = resolvedConfiguration;
+    Xpp3Dom customConfiguration = configuration.getCustomConfiguration();
+    long key = Crc64.digest(mojoExecution.getVersion() + customConfiguration.toString());
+    if (fullBuild || key != configurationKey) {
+      // other linter options, previous results don't apply
+      lintedDigests.clear();
+      results.clear();
+      configurationKey = key;
+    }
+
+    Set<IProject> dependencies = new LinkedHashSet<IProject>();
+    Map<String, File> changedFiles = getChangedFiles(configuration.getContextRoots(), getLintedExtension(mojoExecution),
+        lintedDigests.isEmpty(), dependencies);
+
+    BuildContext buildContext = getBuildContext();
+    Map<String, File> lintedFiles = new TreeMap<String, File>();
+    Map<String, Long> digests = new HashMap<String, Long>();
+    for (Map.Entry<String, File> entry : changedFiles.entrySet()) {
+      String uri = entry.getKey();
+      File file = entry.getValue();
+      if (!file.isFile()) {
+        lintedDigests.remove(uri);
+        buildContext.removeMessages(file);
+        continue;
+      }
+      Long digest;
+      try {
+        digest = Long.valueOf(Crc64.digest(file));
+      } catch (IOException e) {
+        // Can't tell, let wro4j have a look
+        digest = null;
+      }
+      if (digest != null && digest.equals(lintedDigests.get(uri))) {
+        // only touched
+        continue;
+      }
+      List<LintReport.Problem> cachedProblems = digest == null ? null : results.get(digest);
+      if (cachedProblems != null) {
+        report(buildContext, file, cachedProblems);
+        lintedDigests.put(uri, digest);
+        continue;
+      }
+      lintedFiles.put(uri, file);
+      digests.put(uri, digest);
+    }
+
+    WroModel wroModel = getModel(configuration);
+    Set<String> groups = null;
+    if (wroModel.isIndexable()) {
+      // wro4j only lints the resources of the groups
+      for (String uri : new ArrayList<String>(lintedFiles.keySet())) {
+        if (wroModel.getGroupsContaining(uri).isEmpty()) {
+          lintedFiles.remove(uri);
+        }
+      }
+      groups = wroModel.getAffectedGroups(lintedFiles.keySet());
+      if (groups != null) {
+        groups = configuration.retainConfiguredGroups(groups);
+      }
+    }
+    if (lintedFiles.isEmpty() || (groups != null && groups.isEmpty())) {
+      return getResult(dependencies);
+    }
+
+    if (monitor != null) {
+      monitor.setTaskName(NLS.bind("Invoking {0} on {1}", mojoExecution.getMojoDescriptor().getFullGoalName(),
+          facade.getProject().getName()));
+    }
+    List<List<String>> partitions = groups == null ? Collections.singletonList(Collections.<String> emptyList())
+        : ParallelGroupExecutor.partition(groups,
+            Wro4jBuildParticipant.getParallelism(facade.getMavenProject()));
+    List<File> reportFiles = new ArrayList<File>(partitions.size());
+    List<Xpp3Dom> configurations = new ArrayList<Xpp3Dom>(partitions.size());
+    File reportsFolder = facade.getProject().getWorkingLocation(Wro4jProjectState.PLUGIN_ID).append(REPORTS_FOLDER)
+        .toFile();
+    reportsFolder.mkdirs();
+    for (int i = 0; i < partitions.size(); i++) {
+      File reportFile = new File(reportsFolder, mojoExecution.getExecutionId() + "-" + i + ".xml");
+      reportFile.delete();
+      reportFiles.add(reportFile);
+      Xpp3Dom partitionConfiguration = new Xpp3Dom(customConfiguration);
+      if (groups != null) {
+        ResolvedConfiguration.restrictTargetGroups(partitionConfiguration, partitions.get(i));
+      }
+      // problems are reported as markers, they must not fail the build
+      setParameter(partitionConfiguration, REPORT_FILE, reportFile.getAbsolutePath());
+      setParameter(partitionConfiguration, FAIL_NEVER, Boolean.TRUE.toString());
+      configurations.add(partitionConfiguration);
+    }
+
+    // wro4j would skip the resources without delta
+    BuildContext mojoBuildContext = new Wro4jBuildParticipant.CleanBuildContext(buildContext);
+    List<List<Throwable>> errors = execute(mojoExecution, configurations, mojoBuildContext, monitor);
+
+    Set<String> lintedGroups = new HashSet<String>();
+    Map<String, List<LintReport.Problem>> problems = new HashMap<String, List<LintReport.Problem>>();
+    boolean allLinted = true;
+    File pom = facade.getPom().getLocation().toFile();
+    for (int i = 0; i < partitions.size(); i++) {
+      if (errors.get(i) != null && errors.get(i).isEmpty() && reportFiles.get(i).isFile()) {
+        try {
+          problems.putAll(LintReport.read(reportFiles.get(i)));
+          lintedGroups.addAll(partitions.get(i));
+          continue;
+        } catch (IOException e) {
+          buildContext.addMessage(pom, 0, 0, e.getMessage(), BuildContext.SEVERITY_WARNING, e);
+        }
+      }
+      allLinted = false;
+    }
+
+    for (Map.Entry<String, File> entry : lintedFiles.entrySet()) {
+      String uri = entry.getKey();
+      if (groups == null ? !allLinted : Collections.disjoint(wroModel.getGroupsContaining(uri), lintedGroups)) {
+        continue;
+      }
+      List<LintReport.Problem> fileProblems = problems.get(uri);
+      if (fileProblems == null) {
+        fileProblems = Collections.emptyList();
+      }
+      report(buildContext, entry.getValue(), fileProblems);
+      Long digest = digests.get(uri);
+      if (digest != null) {
+        results.put(digest, fileProblems);
+        lintedDigests.put(uri, digest);
+      }
+    }
+    return getResult(dependencies);
+  }
+
+  /**
+   * Executes the mojo once per configuration, on the build thread if there's only one.
+   *
+   * @return the errors raised by each execution, in the configurations order, <code>null</code> for
+   *         the executions canceled before they were done
+   */
+  private List<List<Throwable>> execute(MojoExecution mojoExecution, List<Xpp3Dom> configurations,
+      BuildContext mojoBuildContext, IProgressMonitor monitor) throws Exception {
+    if (configurations.size() > 1) {
+      ParallelGroupExecutor executor = new ParallelGroupExecutor(getSession(), mojoExecution, mojoBuildContext);
+      List<List<Throwable>> errors = executor.executeAll(configurations, monitor);
+      File pom = getMavenProjectFacade().getPom().getLocation().toFile();
+      for (List<Throwable> partitionErrors : errors) {
+        if (partitionErrors == null) {
+          // canceled
+          continue;
+        }
+        for (Throwable error : partitionErrors) {
+          String message = NLS.bind("Failed to run {0} : {1}", mojoExecution.getGoal(), error.getMessage());
+          getBuildContext().addMessage(pom, 0, 0, message, BuildContext.SEVERITY_ERROR, error);
+        }
+      }
+      return errors;
+    }
+    List<Throwable> exceptions = getSession().getResult().getExceptions();
+    int previousErrors = exceptions.size();
+    BuildContext originalBuildContext = getBuildContext();
+    ThreadBuildContext.setThreadBuildContext(mojoBuildContext);
+    try {
+      MojoExecution execution = ResolvedConfiguration.newExecution(mojoExecution, configurations.get(0));
+      MavenPlugin.getMaven().execute(getSession(), execution, monitor);
+    } finally {
+      ThreadBuildContext.setThreadBuildContext(originalBuildContext);
+    }
+    exceptions = getSession().getResult().getExceptions();
+    return Collections.singletonList(new ArrayList<Throwable>(exceptions.subList(previousErrors, exceptions.size())));
+  }
+
+  private static void report(BuildContext buildContext, File file, List<LintReport.Problem> problems) {
+    buildContext.removeMessages(file);
+    for (LintReport.Problem problem : problems) {
+      problem.report(buildContext, file);
+    }
+  }
+
+  /**
+   * Collects the linted files changed under the context folders, from the resource deltas when
+   * available, by walking the folders otherwise.
+   *
+   * @param dependencies receives the other projects holding context folders
+   * @return the changed files, keyed by normalized uri
+   */
+  private Map<String, File> getChangedFiles(Collection<File> sources, String extension, boolean fullScan,
+      Set<IProject> dependencies) throws CoreException {
+    IProject project = getMavenProjectFacade().getProject();
+    ResourceClassifier classifier = Wro4jBuildParticipant.getClassifier(getMavenProjectFacade().getMavenProject());
+    Map<String, File> files = new LinkedHashMap<String, File>();
+    for (File source : sources) {
+      IContainer container = ResourcesPlugin.getWorkspace().getRoot()
+          .getContainerForLocation(Path.fromOSString(source.getAbsolutePath()));
+      IResourceDelta delta = container == null ? null : getDelta(container.getProject());
+      if (container != null && !project.equals(container.getProject())) {
+        dependencies.add(container.getProject());
+      }
+      Map<String, File> sourceFiles = new LinkedHashMap<String, File>();
+      if (fullScan || delta == null) {
+        walk(classifier, source, "", sourceFiles);
+      } else {
+        ResourceDeltaCollector collector = new ResourceDeltaCollector(sourceFiles, classifier);
+        collector.addRoot(container, "");
+        delta.accept(collector);
+      }
+      for (Map.Entry<String, File> file : sourceFiles.entrySet()) {
+        String uri = WroModel.normalize(file.getKey());
+        // first context folder wins, like in wro4j
+        if (uri.endsWith(extension) && classifier.isWebResource(file.getKey()) && !files.containsKey(uri)) {
+          files.put(uri, file.getValue());
+        }
+      }
+    }
+    return files;
+  }
+
+  private static void walk(ResourceClassifier classifier, File folder, String prefix, Map<String, File> files) {
+    File[] children = folder.listFiles();
+    if (children == null) {
+      return;
+    }
+    for (File child : children) {
+      String path = prefix + child.getName();
+      if (child.isDirectory()) {
+        if (!classifier.isPruned(path)) {
+          walk(classifier, child, path + "/", files);
+        }
+      } else {
+        files.put(path, child);
+      }
+    }
+  }
+
+  private static String getLintedExtension(MojoExecution execution) {
+    return CSSLINT.equals(execution.getGoal()) ? ".css" : ".js";
+  }
+
+  /**
+   * @return the wro model, read again whenever the model file changes
+   */
+  private WroModel getModel(ResolvedConfiguration configuration) {
+    File wroFile = Wro4jBuildParticipant.getWroFile(configuration);
+    long stamp = wroFile == null ? 0 : wroFile.lastModified() ^ wroFile.length();
+    if (model == null || stamp != modelStamp) {
+      try {
+        model = WroModelReader.read(wroFile);
+      } catch (IOException e) {
+        model = WroModel.UNKNOWN;
+      }
+      modelStamp = stamp;
+    }
+    return model;
+  }
+
+  private static void setParameter(Xpp3Dom configuration, String name, String value) {
+    Xpp3Dom dom = configuration.getChild(name);
+    if (dom == null) {
+      dom = new Xpp3Dom(name);
+      configuration.addChild(dom);
+    }
+    dom.setValue(value);
+  }
+
+  private static Set<IProject> getResult(Set<IProject> dependencies) {
+    return dependencies.isEmpty() ? null : dependencies;
+  }
+
+  @Override
+  public void clean(IProgressMonitor monitor) throws CoreException {
+    resolvedConfiguration = null;
+    model = null;
+    lintedDigests.clear();
+    results.clear();
+    super.clean(monitor);
+  }
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.sonatype.plexus.build.incremental.BuildContext;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Reads the report files written by the wro4j lint mojos. The checkstyle format
+ * (<code>&lt;error line column severity message/&gt;</code>) and the lint and csslint formats
+ * (<code>&lt;issue line char severity reason/&gt;</code>) are supported, problems being indexed by
+ * the uri of the resource they were found in.
+ */
+class LintReport {
+
+  private static final String FILE = "file";
+  private static final String NAME = "name";
+  private static final String[] PROBLEMS = {"error", "issue"};
+  private static final String[] MESSAGES = {"message", "reason"};
+  private static final String[] COLUMNS = {"column", "char"};
+
+  private LintReport() {
+  }
+
+  /**
+   * @return the problems found in each resource, keyed by normalized uri. Resources without
+   *         problems are usually left out of the reports.
+   */
+  static Map<String, List<Problem>> read(File reportFile) throws IOException {
+    Document document;
+    try {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      DocumentBuilder builder = factory.newDocumentBuilder();
+      document = builder.parse(reportFile);
+    } catch (ParserConfigurationException e) {
+      throw new IOException(e.getMessage());
+    } catch (SAXException e) {
+      throw new IOException("Invalid lint report " + reportFile + " : " + e.getMessage());
+    }
+    Map<String, List<Problem>> problems = new HashMap<String, List<Problem>>();
+    NodeList files = document.getElementsByTagName(FILE);
+    for (int i = 0; i < files.getLength(); i++) {
+      Element file = (Element) files.item(i);
+      String uri = WroModel.normalize(file.getAttribute(NAME));
+      List<Problem> fileProblems = problems.get(uri);
+      if (fileProblems == null) {
+        fileProblems = new ArrayList<Problem>();
+        problems.put(uri, fileProblems);
+      }
+      NodeList children = file.getChildNodes();
+      for (int j = 0; j < children.getLength(); j++) {
+        Node child = children.item(j);
+        if (child.getNodeType() == Node.ELEMENT_NODE && isProblem(child.getNodeName())) {
+          fileProblems.add(readProblem((Element) child));
+        }
+      }
+    }
+    return problems;
+  }
+
+  private static boolean isProblem(String nodeName) {
+    for (String name : PROBLEMS) {
+      if (name.equals(nodeName)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Problem readProblem(Element element) {
+    String severity = element.getAttribute("severity");
+    return new Problem(getInt(element.getAttribute("line")), getInt(getAttribute(element, COLUMNS)),
+        getAttribute(element, MESSAGES), "error".equalsIgnoreCase(severity) ? BuildContext.SEVERITY_ERROR
+            : BuildContext.SEVERITY_WARNING);
+  }
+
+  private static String getAttribute(Element element, String[] names) {
+    for (String name : names) {
+      if (element.hasAttribute(name)) {
+        return element.getAttribute(name);
+      }
+    }
+    return "";
+  }
+
+  private static int getInt(String value) {
+    try {
+      return Math.max(0, Integer.parseInt(value.trim()));
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  static class Problem {
+
+    private final int line;
+
+    private final int column;
+
+    private final String message;
+
+    private final int severity;
+
+    Problem(int line, int column, String message, int severity) {
+      this.line = line;
+      this.column = column;
+      this.message = message;
+      this.severity = severity;
+    }
+
+    void report(BuildContext buildContext, File file) {
+      buildContext.addMessage(file, line, column, message, severity, null);
+    }
+  }
+}
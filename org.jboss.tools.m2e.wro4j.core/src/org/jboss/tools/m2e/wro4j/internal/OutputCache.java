@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.sonatype.plexus.build.incremental.BuildContext;
+
+/**
+ * On disk cache of the files generated for wro4j groups, addressed by the same keys as
+ * {@link SharedGroupOutputs} : the processing configuration, the group definition and the digests
+ * of its resources. Reverting an edit, or switching back to another branch, then restores the
+ * processed bundles instead of running wro4j again. The least recently used entries are evicted
+ * once the cache grows over its maximum size.
+ */
+class OutputCache {
+
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private final File folder;
+
+  private final long maxSize;
+
+  /**
+   * @param maxSize the maximum size of the cache, in bytes
+   */
+  OutputCache(File folder, long maxSize) {
+    this.folder = folder;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Copies the files cached for a group to the given targets, matched by extension.
+   *
+   * @param targets the files wro4j would generate for the group
+   * @return <code>false</code> if nothing was cached for the group, it must then be built
+   */
+  synchronized boolean restore(long key, Collection<File> targets, BuildContext buildContext) throws IOException {
+    File entry = getEntry(key);
+    File[] cachedFiles = entry.listFiles();
+    if (cachedFiles == null || cachedFiles.length == 0) {
+      return false;
+    }
+    Map<String, File> targetsByExtension = new HashMap<String, File>();
+    for (File target : targets) {
+      targetsByExtension.put(getExtension(target), target);
+    }
+    for (File cachedFile : cachedFiles) {
+      if (!targetsByExtension.containsKey(cachedFile.getName())) {
+        return false;
+      }
+    }
+    for (File cachedFile : cachedFiles) {
+      File target = targetsByExtension.get(cachedFile.getName());
+      if (target.getParentFile() != null) {
+        target.getParentFile().mkdirs();
+      }
+      InputStream in = new FileInputStream(cachedFile);
+      try {
+        OutputStream out = buildContext.newFileOutputStream(target);
+        try {
+          IOUtil.copy(in, out);
+        } finally {
+          out.close();
+        }
+      } finally {
+        IOUtil.close(in);
+      }
+    }
+    // most recently used
+    entry.setLastModified(System.currentTimeMillis());
+    return true;
+  }
+
+  /**
+   * Caches the files generated for a group, evicting the least recently used entries if needed.
+   */
+  synchronized void store(long key, Collection<File> files) throws IOException {
+    File entry = getEntry(key);
+    if (entry.isDirectory()) {
+      entry.setLastModified(System.currentTimeMillis());
+      return;
+    }
+    // written aside, so a partial entry is never restored
+    File temp = new File(folder, entry.getName() + TEMP_SUFFIX);
+    FileUtils.deleteDirectory(temp);
+    if (!temp.mkdirs()) {
+      throw new IOException("Can't create " + temp);
+    }
+    try {
+      for (File file : files) {
+        if (file.isFile()) {
+          FileUtils.copyFile(file, new File(temp, getExtension(file)));
+        }
+      }
+      if (!temp.renameTo(entry)) {
+        throw new IOException("Can't create " + entry);
+      }
+    } finally {
+      FileUtils.deleteDirectory(temp);
+    }
+    evict();
+  }
+
+  private void evict() throws IOException {
+    File[] entries = folder.listFiles();
+    if (entries == null) {
+      return;
+    }
+    Map<File, Long> sizes = new HashMap<File, Long>();
+    long totalSize = 0;
+    for (File entry : entries) {
+      long size = FileUtils.sizeOfDirectory(entry);
+      sizes.put(entry, Long.valueOf(size));
+      totalSize += size;
+    }
+    if (totalSize <= maxSize) {
+      return;
+    }
+    Arrays.sort(entries, new Comparator<File>() {
+      public int compare(File e1, File e2) {
+        long t1 = e1.lastModified();
+        long t2 = e2.lastModified();
+        return t1 < t2 ? -1 : t1 == t2 ? 0 : 1;
+      }
+    });
+    for (int i = 0; i < entries.length && totalSize > maxSize; i++) {
+      FileUtils.deleteDirectory(entries[i]);
+      totalSize -= sizes.get(entries[i]).longValue();
+    }
+  }
+
+  private File getEntry(long key) {
+    return new File(folder, Long.toHexString(key));
+  }
+
+  /**
+   * @return the extension of a file, without the dot, which names its copy in a cache entry
+   */
+  private static String getExtension(File file) {
+    String name = file.getName();
+    int dot = name.lastIndexOf('.');
+    return dot < 0 ? "_" : name.substring(dot + 1);
+  }
+}
@@ -0,0 +1,240 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.m2e.core.MavenPlugin;
+import org.eclipse.m2e.core.embedder.ICallable;
+import org.eclipse.m2e.core.embedder.IMaven;
+import org.eclipse.m2e.core.embedder.IMavenExecutionContext;
+import org.sonatype.plexus.build.incremental.BuildContext;
+import org.sonatype.plexus.build.incremental.ThreadBuildContext;
+
+/**
+ * Runs the wro4j mojo on partitions of the groups concurrently. Nothing mutable is shared between
+ * partitions : each one runs its own copy of the mojo execution, in its own session on its own copy
+ * of the project, so failures can be told apart and reported in a deterministic order. Neither the
+ * m2e build context nor the connector ones are thread-safe, so each partition also gets its own
+ * {@link PartitionBuildContext}, whose writes are applied to the shared build context on the calling
+ * thread once all the partitions are done. Canceling the monitor stops waiting for the partitions
+ * still running, their writes are then dropped.
+ */
+class ParallelGroupExecutor {
+
+  /**
+   * How often the calling thread checks for cancellation while waiting for a partition
+   */
+  private static final long CANCEL_POLL_MILLIS = 100;
+
+  private final MavenSession session;
+
+  private final MojoExecution mojoExecution;
+
+  private final BuildContext buildContext;
+
+  /**
+   * @param buildContext the build context the mojo executions results are applied to
+   */
+  ParallelGroupExecutor(MavenSession session, MojoExecution mojoExecution, BuildContext buildContext) {
+    this.session = session;
+    this.mojoExecution = mojoExecution;
+    this.buildContext = buildContext;
+  }
+
+  /**
+   * Splits the groups, sorted by name, in at most <code>count</code> partitions, round-robin.
+   */
+  static List<List<String>> partition(Collection<String> groups, int count) {
+    List<String> sortedGroups = new ArrayList<String>(new TreeSet<String>(groups));
+    int partitionCount = Math.max(1, Math.min(count, sortedGroups.size()));
+    List<List<String>> partitions = new ArrayList<List<String>>(partitionCount);
+    for (int i = 0; i < partitionCount; i++) {
+      partitions.add(new ArrayList<String>());
+    }
+    for (int i = 0; i < sortedGroups.size(); i++) {
+      partitions.get(i % partitionCount).add(sortedGroups.get(i));
+    }
+    return partitions;
+  }
+
+  /**
+   * Executes the mojo once per partition, each execution only building the groups of its
+   * partition.
+   *
+   * @param configuration the mojo configuration, targetGroups being overridden for each partition
+   * @return the errors raised by each partition, in the partitions order, <code>null</code> for the
+   *         partitions canceled before they were done
+   */
+  List<List<Throwable>> execute(Xpp3Dom configuration, List<List<String>> partitions, IProgressMonitor monitor)
+      throws InterruptedException {
+    List<Xpp3Dom> configurations = new ArrayList<Xpp3Dom>(partitions.size());
+    for (List<String> partition : partitions) {
+      Xpp3Dom partitionConfiguration = new Xpp3Dom(configuration);
+      ResolvedConfiguration.restrictTargetGroups(partitionConfiguration, partition);
+      configurations.add(partitionConfiguration);
+    }
+    return executeAll(configurations, monitor);
+  }
+
+  /**
+   * Executes the mojo once per configuration, concurrently.
+   *
+   * @return the errors raised by each execution, in the configurations order, <code>null</code> for
+   *         the executions canceled before they were done
+   */
+  List<List<Throwable>> executeAll(List<Xpp3Dom> configurations, IProgressMonitor monitor)
+      throws InterruptedException {
+    SubMonitor progress = SubMonitor.convert(monitor, configurations.size());
+    ExecutorService executor = Executors.newFixedThreadPool(configurations.size(), new WorkerThreadFactory());
+    List<PartitionBuildContext> buildContexts = new ArrayList<PartitionBuildContext>(configurations.size());
+    try {
+      List<Future<List<Throwable>>> futures = new ArrayList<Future<List<Throwable>>>(configurations.size());
+      for (Xpp3Dom configuration : configurations) {
+        PartitionBuildContext partitionContext = new PartitionBuildContext(buildContext);
+        buildContexts.add(partitionContext);
+        futures.add(progress.isCanceled() ? null : executor.submit(new PartitionBuild(ResolvedConfiguration
+            .newExecution(mojoExecution, configuration), partitionContext, progress)));
+      }
+      List<List<Throwable>> errors = new ArrayList<List<Throwable>>(configurations.size());
+      for (Future<List<Throwable>> future : futures) {
+        errors.add(future == null ? null : await(future, progress));
+        progress.worked(1);
+      }
+      // back on the calling thread, apply the writes of the partitions done, in order
+      for (int i = 0; i < buildContexts.size(); i++) {
+        if (errors.get(i) != null) {
+          errors.get(i).addAll(buildContexts.get(i).replay());
+        }
+      }
+      return errors;
+    } finally {
+      executor.shutdownNow();
+      // the writes of the canceled partitions, or of all of them if interrupted
+      for (PartitionBuildContext partitionContext : buildContexts) {
+        partitionContext.discard();
+      }
+    }
+  }
+
+  /**
+   * Waits for a partition, until it's done or the build is canceled.
+   *
+   * @return the errors raised by the partition, <code>null</code> if it was canceled before it was
+   *         done
+   */
+  private static List<Throwable> await(Future<List<Throwable>> future, IProgressMonitor monitor)
+      throws InterruptedException {
+    List<Throwable> errors = new ArrayList<Throwable>();
+    while (true) {
+      if (monitor.isCanceled() && !future.isDone()) {
+        future.cancel(true);
+        return null;
+      }
+      try {
+        errors.addAll(future.get(CANCEL_POLL_MILLIS, TimeUnit.MILLISECONDS));
+        return errors;
+      } catch (TimeoutException e) {
+        // check for cancellation again
+      } catch (CancellationException e) {
+        return null;
+      } catch (ExecutionException e) {
+        if (monitor.isCanceled()) {
+          // most likely stopped short by the cancellation rather than broken
+          return null;
+        }
+        errors.add(e.getCause());
+        return errors;
+      }
+    }
+  }
+
+  private class PartitionBuild implements Callable<List<Throwable>> {
+
+    private final MojoExecution execution;
+
+    private final PartitionBuildContext partitionContext;
+
+    private final IProgressMonitor parent;
+
+    PartitionBuild(MojoExecution execution, PartitionBuildContext partitionContext, IProgressMonitor parent) {
+      this.execution = execution;
+      this.partitionContext = partitionContext;
+      this.parent = parent;
+    }
+
+    public List<Throwable> call() throws Exception {
+      final IMaven maven = MavenPlugin.getMaven();
+      MavenProject project = session.getCurrentProject().clone();
+      return maven.createExecutionContext().execute(project, new ICallable<List<Throwable>>() {
+        public List<Throwable> call(IMavenExecutionContext context, IProgressMonitor monitor) throws CoreException {
+          MavenSession partitionSession = context.getSession();
+          ThreadBuildContext.setThreadBuildContext(partitionContext);
+          try {
+            maven.execute(partitionSession, execution, monitor);
+          } finally {
+            ThreadBuildContext.setThreadBuildContext(null);
+          }
+          return new ArrayList<Throwable>(partitionSession.getResult().getExceptions());
+        }
+      }, new CancelForwardingMonitor(parent));
+    }
+  }
+
+  /**
+   * Monitor of a partition : only reports the cancellation of the build, progress being reported by
+   * the calling thread, which owns the build monitor.
+   */
+  private static class CancelForwardingMonitor extends NullProgressMonitor {
+
+    private final IProgressMonitor parent;
+
+    CancelForwardingMonitor(IProgressMonitor parent) {
+      this.parent = parent;
+    }
+
+    @Override
+    public boolean isCanceled() {
+      return super.isCanceled() || parent.isCanceled();
+    }
+  }
+
+  private static class WorkerThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "m2e-wro4j group builder " + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
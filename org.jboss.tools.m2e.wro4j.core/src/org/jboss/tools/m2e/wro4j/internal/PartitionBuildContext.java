@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.sonatype.plexus.build.incremental.BuildContext;
+
+/**
+ * {@link BuildContext} of a single partition of a concurrent build. Queries are forwarded to the
+ * shared build context, which only reads the resource deltas, but nothing is written to it: written
+ * files, refreshes, messages and values are recorded in order, then applied to the shared build
+ * context by {@link #replay()} on the calling thread, once every partition is done. Written files
+ * are spooled to temporary files until then, so memory doesn't grow with the size of the outputs.
+ */
+class PartitionBuildContext extends ForwardingBuildContext {
+
+  private final List<Operation> operations = new ArrayList<Operation>();
+
+  private final Map<String, Object> values = new HashMap<String, Object>();
+
+  private final List<File> spoolFiles = new ArrayList<File>();
+
+  private boolean discarded;
+
+  PartitionBuildContext(BuildContext delegate) {
+    super(delegate);
+  }
+
+  @Override
+  public OutputStream newFileOutputStream(final File file) throws IOException {
+    final File spoolFile = newSpoolFile();
+    return new FileOutputStream(spoolFile) {
+
+      private boolean closed;
+
+      @Override
+      public void close() throws IOException {
+        if (closed) {
+          return;
+        }
+        closed = true;
+        super.close();
+        record(new Operation() {
+          void apply(BuildContext buildContext) throws IOException {
+            InputStream in = new FileInputStream(spoolFile);
+            try {
+              OutputStream out = buildContext.newFileOutputStream(file);
+              try {
+                IOUtil.copy(in, out);
+              } finally {
+                out.close();
+              }
+            } finally {
+              IOUtil.close(in);
+            }
+          }
+        });
+      }
+    };
+  }
+
+  private synchronized File newSpoolFile() throws IOException {
+    if (discarded) {
+      throw new IOException("The partition build was canceled");
+    }
+    File spoolFile = File.createTempFile("m2e-wro4j", ".tmp");
+    spoolFiles.add(spoolFile);
+    return spoolFile;
+  }
+
+  @Override
+  public void refresh(final File file) {
+    record(new Operation() {
+      void apply(BuildContext buildContext) {
+        buildContext.refresh(file);
+      }
+    });
+  }
+
+  @Override
+  public synchronized void setValue(final String key, final Object value) {
+    values.put(key, value);
+    record(new Operation() {
+      void apply(BuildContext buildContext) {
+        buildContext.setValue(key, value);
+      }
+    });
+  }
+
+  @Override
+  public synchronized Object getValue(String key) {
+    return values.containsKey(key) ? values.get(key) : super.getValue(key);
+  }
+
+  @SuppressWarnings("deprecation")
+  @Override
+  public void addWarning(File file, int line, int column, String message, Throwable cause) {
+    addMessage(file, line, column, message, SEVERITY_WARNING, cause);
+  }
+
+  @SuppressWarnings("deprecation")
+  @Override
+  public void addError(File file, int line, int column, String message, Throwable cause) {
+    addMessage(file, line, column, message, SEVERITY_ERROR, cause);
+  }
+
+  @Override
+  public void addMessage(final File file, final int line, final int column, final String message,
+      final int severity, final Throwable cause) {
+    record(new Operation() {
+      void apply(BuildContext buildContext) {
+        buildContext.addMessage(file, line, column, message, severity, cause);
+      }
+    });
+  }
+
+  @Override
+  public void removeMessages(final File file) {
+    record(new Operation() {
+      void apply(BuildContext buildContext) {
+        buildContext.removeMessages(file);
+      }
+    });
+  }
+
+  private synchronized void record(Operation operation) {
+    if (!discarded) {
+      operations.add(operation);
+    }
+  }
+
+  /**
+   * Applies the recorded operations to the shared build context, in the order they were made.
+   *
+   * @return the errors raised writing the files
+   */
+  synchronized List<Throwable> replay() {
+    List<Throwable> errors = new ArrayList<Throwable>();
+    for (Operation operation : operations) {
+      try {
+        operation.apply(getDelegate());
+      } catch (IOException e) {
+        errors.add(e);
+      }
+    }
+    operations.clear();
+    deleteSpoolFiles();
+    return errors;
+  }
+
+  /**
+   * Drops the recorded operations, and any later one, the partition having been canceled.
+   */
+  synchronized void discard() {
+    discarded = true;
+    operations.clear();
+    deleteSpoolFiles();
+  }
+
+  private void deleteSpoolFiles() {
+    for (File spoolFile : spoolFiles) {
+      spoolFile.delete();
+    }
+    spoolFiles.clear();
+  }
+
+  private abstract static class Operation {
+
+    abstract void apply(BuildContext buildContext) throws IOException;
+  }
+}
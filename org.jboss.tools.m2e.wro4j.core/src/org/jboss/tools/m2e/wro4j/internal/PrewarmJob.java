@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.Mojo;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.m2e.core.MavenPlugin;
+import org.eclipse.m2e.core.embedder.ICallable;
+import org.eclipse.m2e.core.embedder.IMaven;
+import org.eclipse.m2e.core.embedder.IMavenExecutionContext;
+import org.eclipse.m2e.core.project.IMavenProjectFacade;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Does what the first build of a freshly configured project would otherwise do on the build
+ * thread : resolving the wro4j configuration, reading the wro model and loading the wro4j plugin
+ * and its processors. Runs with a low priority and no scheduling rule, so it never holds up the
+ * saves, refreshes and builds of the project : a build starting meanwhile resolves its own
+ * configuration. Web resources are only digested by builds.
+ */
+class PrewarmJob extends Job {
+
+  private static final String GROUP_ID = "ro.isdc.wro4j";
+
+  private static final String ARTIFACT_ID = "wro4j-maven-plugin";
+
+  private static final String GOAL = "run";
+
+  private static final Map<IProject, PrewarmJob> JOBS = new ConcurrentHashMap<IProject, PrewarmJob>();
+
+  private final IMavenProjectFacade facade;
+
+  /**
+   * Configurations resolved for each execution, until a build takes them
+   */
+  private final Map<String, ResolvedConfiguration> configurations = new HashMap<String, ResolvedConfiguration>();
+
+  private PrewarmJob(IMavenProjectFacade facade) {
+    super(NLS.bind("Preparing wro4j build of {0}", facade.getProject().getName()));
+    this.facade = facade;
+    setSystem(true);
+    setPriority(Job.DECORATE);
+  }
+
+  static void schedule(IMavenProjectFacade facade) {
+    PrewarmJob job = new PrewarmJob(facade);
+    PrewarmJob previous = JOBS.put(facade.getProject(), job);
+    if (previous != null) {
+      previous.cancel();
+    }
+    job.schedule();
+  }
+
+  /**
+   * Cancels the job of the given project and forgets what it resolved, so a configuration doesn't
+   * outlive the project configuration it was resolved from.
+   */
+  static void cancel(IProject project) {
+    PrewarmJob job = JOBS.remove(project);
+    if (job != null) {
+      job.cancel();
+    }
+  }
+
+  /**
+   * @return the configuration resolved in the background for the given execution, or
+   *         <code>null</code> if there is none, or if it doesn't apply anymore. It's only handed
+   *         out once.
+   */
+  static ResolvedConfiguration takeConfiguration(IProject project, MojoExecution execution, long pomStamp) {
+    PrewarmJob job = JOBS.get(project);
+    if (job == null || job.getState() != Job.NONE) {
+      return null;
+    }
+    ResolvedConfiguration configuration;
+    synchronized (job) {
+      configuration = job.configurations.remove(execution.getExecutionId());
+      if (job.configurations.isEmpty()) {
+        JOBS.remove(project);
+      }
+    }
+    return configuration != null && configuration.adopt(execution, pomStamp) ? configuration : null;
+  }
+
+  @Override
+  protected IStatus run(IProgressMonitor monitor) {
+    try {
+      final List<MojoExecution> executions = facade.getMojoExecutions(GROUP_ID, ARTIFACT_ID, monitor, GOAL);
+      if (executions.isEmpty() || monitor.isCanceled()) {
+        return Status.OK_STATUS;
+      }
+      final MavenProject mavenProject = facade.getMavenProject(monitor);
+      MavenPlugin.getMaven().createExecutionContext().execute(mavenProject, new ICallable<Void>() {
+        public Void call(IMavenExecutionContext context, IProgressMonitor monitor) throws CoreException {
+          for (MojoExecution execution : executions) {
+            if (monitor.isCanceled()) {
+              break;
+            }
+            prewarm(context.getSession(), execution);
+          }
+          return null;
+        }
+      }, monitor);
+    } catch (CoreException e) {
+      // only an optimization, the build will report the problem
+    } finally {
+      synchronized (this) {
+        if (configurations.isEmpty() && JOBS.get(facade.getProject()) == this) {
+          JOBS.remove(facade.getProject());
+        }
+      }
+    }
+    return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+  }
+
+  private void prewarm(MavenSession session, MojoExecution execution) throws CoreException {
+    ResolvedConfiguration configuration;
+    try {
+      configuration = ResolvedConfiguration.resolve(facade, session, execution);
+    } catch (IOException e) {
+      return;
+    }
+
+    Wro4jProjectState state = Wro4jProjectState.get(facade.getProject(), execution.getExecutionId());
+    File wroFile = Wro4jBuildParticipant.getWroFile(configuration);
+    WroModel model;
+    try {
+      model = WroModelReader.read(wroFile);
+    } catch (IOException e) {
+      model = WroModel.UNKNOWN;
+    }
+    // resources are left to the build : digesting them now would hide the changes it hasn't seen yet
+    state.setModel(model, wroFile);
+
+    // loads the plugin realm, wro4j and its processors classes
+    IMaven maven = MavenPlugin.getMaven();
+    MojoExecution warmExecution = ResolvedConfiguration.newExecution(execution, configuration.getCustomConfiguration());
+    Mojo mojo = maven.getConfiguredMojo(session, warmExecution, Mojo.class);
+    maven.releaseMojo(mojo, warmExecution);
+
+    synchronized (this) {
+      configurations.put(execution.getExecutionId(), configuration);
+    }
+  }
+}
@@ -0,0 +1,375 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.m2e.core.MavenPlugin;
+import org.eclipse.m2e.core.embedder.IMaven;
+import org.eclipse.m2e.core.project.IMavenProjectFacade;
+import org.eclipse.m2e.core.project.MavenProjectUtils;
+
+/**
+ * wro4j-maven-plugin parameters of a mojo execution, resolved once against the maven session,
+ * along with the configuration customized for m2e-wtp. Resolving parameters means evaluating
+ * expressions against the session, so it's only done again when the pom or the execution change.
+ */
+class ResolvedConfiguration {
+
+  static final String DESTINATION_FOLDER = "destinationFolder";
+  static final String CSS_DESTINATION_FOLDER = "cssDestinationFolder";
+  static final String JS_DESTINATION_FOLDER = "jsDestinationFolder";
+  static final String GROUP_NAME_MAPPING_FILE = "groupNameMappingFile";
+  static final String WRO_FILE = "wroFile";
+  static final String TARGET_GROUPS = "targetGroups";
+  static final String EXTRA_CONFIG_FILE = "extraConfigFile";
+
+  private static final String M2E_WRO4J_WTP_INTEGRATION_KEY = "m2e.wro4j.wtp.integration";
+
+  private MojoExecution mojoExecution;
+
+  private Xpp3Dom originalConfiguration;
+
+  private final long pomStamp;
+
+  private List<File> contextRoots;
+
+  private File destinationFolder;
+  private File jsDestinationFolder;
+  private File cssDestinationFolder;
+  private File groupNameMappingFile;
+
+  private File wroFile;
+  private File extraConfigFile;
+  private String targetGroups;
+
+  private Xpp3Dom customConfiguration;
+
+  /**
+   * The m2e-wtp folder that was missing when the configuration was customized, if any
+   */
+  private IFolder missingM2eWtpFolder;
+
+  private ResolvedConfiguration(MojoExecution mojoExecution, long pomStamp) {
+    this.mojoExecution = mojoExecution;
+    this.originalConfiguration = mojoExecution.getConfiguration();
+    this.pomStamp = pomStamp;
+  }
+
+  static ResolvedConfiguration resolve(IMavenProjectFacade facade, MavenSession session, MojoExecution mojoExecution)
+      throws CoreException, IOException {
+    ResolvedConfiguration configuration = new ResolvedConfiguration(mojoExecution, facade.getPom().getModificationStamp());
+    IMaven maven = MavenPlugin.getMaven();
+    IPath projectLocation = facade.getProject().getLocation();
+    configuration.contextRoots = ConfigurationCustomizer.parseContextRoots(projectLocation.toFile(),
+        maven.getMojoParameterValue(session, mojoExecution, ConfigurationCustomizer.CONTEXT_FOLDER, String.class));
+    configuration.destinationFolder = getLocation(maven, session, mojoExecution, DESTINATION_FOLDER);
+    configuration.jsDestinationFolder = getLocation(maven, session, mojoExecution, JS_DESTINATION_FOLDER);
+    configuration.cssDestinationFolder = getLocation(maven, session, mojoExecution, CSS_DESTINATION_FOLDER);
+    configuration.groupNameMappingFile = getLocation(maven, session, mojoExecution, GROUP_NAME_MAPPING_FILE);
+    configuration.wroFile = getProjectFile(projectLocation, getLocation(maven, session, mojoExecution, WRO_FILE));
+    configuration.extraConfigFile = getProjectFile(projectLocation,
+        getLocation(maven, session, mojoExecution, EXTRA_CONFIG_FILE));
+    configuration.targetGroups = maven.getMojoParameterValue(session, mojoExecution, TARGET_GROUPS, String.class);
+    configuration.customize(facade);
+    return configuration;
+  }
+
+  /**
+   * @return <code>true</code> if this configuration was resolved for the given execution, in its
+   *         current state, and the given pom modification stamp
+   */
+  boolean isResolvedFor(MojoExecution execution, long currentPomStamp) {
+    return mojoExecution == execution && originalConfiguration == execution.getConfiguration()
+        && pomStamp == currentPomStamp && (missingM2eWtpFolder == null || !missingM2eWtpFolder.exists());
+  }
+
+  /**
+   * Rebinds this configuration, resolved for an equivalent execution, ie. by the pre-warm job, to
+   * the given execution.
+   *
+   * @return <code>false</code> if the executions or the pom differ, the configuration must then be
+   *         resolved again
+   */
+  boolean adopt(MojoExecution execution, long currentPomStamp) {
+    Xpp3Dom configuration = execution.getConfiguration();
+    if (pomStamp != currentPomStamp || !mojoExecution.getExecutionId().equals(execution.getExecutionId())
+        || !mojoExecution.getMojoDescriptor().getGoal().equals(execution.getMojoDescriptor().getGoal())
+        || (originalConfiguration == null ? configuration != null : !originalConfiguration.equals(configuration))) {
+      return false;
+    }
+    mojoExecution = execution;
+    originalConfiguration = configuration;
+    return isResolvedFor(execution, currentPomStamp);
+  }
+
+  Collection<File> getContextRoots() {
+    return contextRoots;
+  }
+
+  File getDestinationFolder() {
+    return destinationFolder;
+  }
+
+  File getJsDestinationFolder() {
+    return jsDestinationFolder;
+  }
+
+  File getCssDestinationFolder() {
+    return cssDestinationFolder;
+  }
+
+  File getGroupNameMappingFile() {
+    return groupNameMappingFile;
+  }
+
+  File getWroFile() {
+    return wroFile;
+  }
+
+  File getExtraConfigFile() {
+    return extraConfigFile;
+  }
+
+  /**
+   * @return the groups configured in the pom, or <code>null</code> if all groups are built
+   */
+  String getTargetGroups() {
+    return targetGroups == null || targetGroups.trim().length() == 0 ? null : targetGroups.trim();
+  }
+
+  /**
+   * @return the configuration to execute the mojo with, a new copy for each call, so it can be
+   *         modified freely
+   */
+  Xpp3Dom getCustomConfiguration() {
+    return new Xpp3Dom(customConfiguration);
+  }
+
+  /**
+   * @return the folders and the mapping file wro4j actually writes to, once the configuration is
+   *         customized
+   */
+  Collection<File> getOutputLocations() {
+    List<File> locations = new ArrayList<File>();
+    for (String parameterName : new String[] {DESTINATION_FOLDER, JS_DESTINATION_FOLDER, CSS_DESTINATION_FOLDER,
+        GROUP_NAME_MAPPING_FILE}) {
+      File location = getCustomLocation(parameterName);
+      if (location != null) {
+        locations.add(location);
+      }
+    }
+    return locations;
+  }
+
+  /**
+   * @return the folder wro4j actually writes the given parameter to, once the configuration is
+   *         customized
+   */
+  File getCustomLocation(String parameterName) {
+    Xpp3Dom dom = customConfiguration.getChild(parameterName);
+    File original;
+    if (DESTINATION_FOLDER.equals(parameterName)) {
+      original = destinationFolder;
+    } else if (JS_DESTINATION_FOLDER.equals(parameterName)) {
+      original = jsDestinationFolder;
+    } else if (CSS_DESTINATION_FOLDER.equals(parameterName)) {
+      original = cssDestinationFolder;
+    } else if (GROUP_NAME_MAPPING_FILE.equals(parameterName)) {
+      original = groupNameMappingFile;
+    } else {
+      throw new IllegalArgumentException(parameterName);
+    }
+    if (original == null || dom == null || dom.getValue() == null) {
+      return original;
+    }
+    File custom = new File(dom.getValue());
+    return custom.isAbsolute() ? custom : original;
+  }
+
+  /**
+   * Only keeps the groups the user actually asked for, if targetGroups is configured.
+   */
+  Set<String> retainConfiguredGroups(Set<String> groups) {
+    String configuredGroups = getTargetGroups();
+    if (configuredGroups != null) {
+      groups.retainAll(Arrays.asList(configuredGroups.split(ConfigurationCustomizer.TOKEN_SEPARATOR)));
+    }
+    return groups;
+  }
+
+  /**
+   * @return the non abstract groups of the model the user asked for
+   */
+  Set<String> getBuildableGroups(WroModel model) {
+    Set<String> groups = new TreeSet<String>();
+    for (WroModel.Group group : model.getGroups()) {
+      if (!group.isAbstract()) {
+        groups.add(group.getName());
+      }
+    }
+    return retainConfiguredGroups(groups);
+  }
+
+  /**
+   * @return the files generated for each group, following wro4j's default naming strategy
+   */
+  Map<String, Collection<File>> getGroupOutputs(Collection<String> groups) {
+    Map<String, Collection<File>> outputs = getExpectedOutputs(groups);
+    for (Collection<File> files : outputs.values()) {
+      for (Iterator<File> file = files.iterator(); file.hasNext();) {
+        if (!file.next().isFile()) {
+          file.remove();
+        }
+      }
+    }
+    return outputs;
+  }
+
+  /**
+   * @return the files wro4j would generate for each group, existing or not
+   */
+  Map<String, Collection<File>> getExpectedOutputs(Collection<String> groups) {
+    File destination = getCustomLocation(DESTINATION_FOLDER);
+    File jsFolder = getCustomLocation(JS_DESTINATION_FOLDER);
+    File cssFolder = getCustomLocation(CSS_DESTINATION_FOLDER);
+    jsFolder = jsFolder == null ? destination : jsFolder;
+    cssFolder = cssFolder == null ? destination : cssFolder;
+    Map<String, Collection<File>> outputs = new HashMap<String, Collection<File>>();
+    for (String group : groups) {
+      List<File> files = new ArrayList<File>(2);
+      if (jsFolder != null) {
+        files.add(new File(jsFolder, group + ".js"));
+      }
+      if (cssFolder != null) {
+        files.add(new File(cssFolder, group + ".css"));
+      }
+      outputs.put(group, files);
+    }
+    return outputs;
+  }
+
+  /**
+   * Sets the groups a mojo configuration builds.
+   */
+  static void restrictTargetGroups(Xpp3Dom configuration, Collection<String> targetGroups) {
+    StringBuilder groups = new StringBuilder();
+    for (String group : targetGroups) {
+      if (groups.length() > 0) {
+        groups.append(",");
+      }
+      groups.append(group);
+    }
+    Xpp3Dom dom = configuration.getChild(TARGET_GROUPS);
+    if (dom == null) {
+      dom = new Xpp3Dom(TARGET_GROUPS);
+      configuration.addChild(dom);
+    }
+    dom.setValue(groups.toString());
+  }
+
+  /**
+   * @return a copy of the given execution, using the given configuration, so it can be executed
+   *         without touching the execution shared with m2e
+   */
+  static MojoExecution newExecution(MojoExecution template, Xpp3Dom configuration) {
+    MojoExecution execution = new MojoExecution(template.getMojoDescriptor(), template.getExecutionId(),
+        template.getSource());
+    execution.setLifecyclePhase(template.getLifecyclePhase());
+    execution.setConfiguration(configuration);
+    return execution;
+  }
+
+  private static File getLocation(IMaven maven, MavenSession session, MojoExecution mojoExecution,
+      String parameterName) throws CoreException {
+    return maven.getMojoParameterValue(session, mojoExecution, parameterName, File.class);
+  }
+
+  /**
+   * @return the location of a file parameter, relative paths being resolved against the project
+   */
+  private static File getProjectFile(IPath projectLocation, File file) {
+    if (file != null && !file.isAbsolute()) {
+      return projectLocation.append(file.getPath()).toFile();
+    }
+    return file;
+  }
+
+  private void customize(IMavenProjectFacade facade) throws IOException, CoreException {
+    customConfiguration = ConfigurationCustomizer.copy(originalConfiguration);
+
+    if (!"war".equals(facade.getPackaging())) {
+      // Not a war project, we don't know how to customize that
+      return;
+    }
+
+    IProject project = facade.getProject();
+    String target = facade.getMavenProject().getBuild().getDirectory();
+    IPath relativeTargetPath = MavenProjectUtils.getProjectRelativePath(project, target);
+    if (relativeTargetPath == null) {
+      // target folder not under the project directory, we bail
+      return;
+    }
+
+    IFolder m2eWtpFolder = project.getFolder(relativeTargetPath.append("m2e-wtp"));
+
+    if (!m2eWtpFolder.exists()) {
+      // Not a m2e-wtp project (yet), we don't know how to customize either
+      // TODO Try to support Sonatype's webby instead?
+      missingM2eWtpFolder = m2eWtpFolder;
+      return;
+    }
+    if (isWtpIntegrationDisabled(facade.getMavenProject(new NullProgressMonitor()))) {
+      return;
+    }
+    File webResourcesFolder = m2eWtpFolder.getFolder("web-resources").getLocation().toFile();
+
+    File defaultOutputPathPrefix = new File(target, facade.getMavenProject().getBuild().getFinalName());
+
+    ConfigurationCustomizer.fixContextFolders(customConfiguration, contextRoots);
+
+    ConfigurationCustomizer.customizeLocation(destinationFolder, webResourcesFolder,
+        defaultOutputPathPrefix, customConfiguration, DESTINATION_FOLDER);
+
+    ConfigurationCustomizer.customizeLocation(jsDestinationFolder, webResourcesFolder,
+        defaultOutputPathPrefix, customConfiguration, JS_DESTINATION_FOLDER);
+
+    ConfigurationCustomizer.customizeLocation(cssDestinationFolder, webResourcesFolder,
+        defaultOutputPathPrefix, customConfiguration, CSS_DESTINATION_FOLDER);
+
+    ConfigurationCustomizer.customizeLocation(groupNameMappingFile, webResourcesFolder,
+        defaultOutputPathPrefix, customConfiguration, GROUP_NAME_MAPPING_FILE);
+  }
+
+  private static boolean isWtpIntegrationDisabled(MavenProject mavenProject) {
+    Properties properties = mavenProject.getProperties();
+    String isWtpIntegrationProperty = properties.getProperty(M2E_WRO4J_WTP_INTEGRATION_KEY, Boolean.TRUE.toString());
+    return !Boolean.parseBoolean(isWtpIntegrationProperty);
+  }
+}
@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * wro4j descriptors and web resources changed since the previous build, indexed by their path
+ * relative to their context folder.
+ */
+class ResourceChanges {
+
+  private final Map<String, File> descriptors = new LinkedHashMap<String, File>();
+
+  private final Map<String, File> webResources = new LinkedHashMap<String, File>();
+
+  void addDescriptor(String path, File file) {
+    descriptors.put(path, file);
+  }
+
+  void addWebResource(String path, File file) {
+    if (!webResources.containsKey(path)) {
+      webResources.put(path, file);
+    }
+  }
+
+  Map<String, File> getDescriptors() {
+    return descriptors;
+  }
+
+  Map<String, File> getWebResources() {
+    return webResources;
+  }
+
+  boolean hasDescriptorChanges() {
+    return !descriptors.isEmpty();
+  }
+
+  boolean hasWebResourceChanges() {
+    return !webResources.isEmpty();
+  }
+}
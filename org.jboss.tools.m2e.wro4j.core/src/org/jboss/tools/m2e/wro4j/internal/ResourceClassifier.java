@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+/**
+ * Sorts paths in wro4j descriptors, web resources and ignored files, in a single pass and without
+ * allocating anything. Web resources are recognized by their extension (case insensitive), looked
+ * up in a trie of reversed extensions, walked from the end of the path. Only the paths passing that
+ * check are then matched against the include and exclude patterns of a {@link ScanFilter}.
+ */
+class ResourceClassifier {
+
+  enum Kind {
+    DESCRIPTOR, WEB_RESOURCE, IGNORED
+  }
+
+  static final String DEFAULT_EXTENSIONS = "js,css,scss,sass,less,coffee,json,template";
+
+  private static final String[] DESCRIPTORS = {"wro.xml", "wro.groovy", "wro.properties"};
+
+  private static final ResourceClassifier DEFAULT = new ResourceClassifier(DEFAULT_EXTENSIONS, new ScanFilter(null,
+      null));
+
+  private static volatile ResourceClassifier custom;
+
+  private final String key;
+
+  private final ScanFilter filter;
+
+  private final Node root;
+
+  /**
+   * The last model given to {@link #forModel(WroModel)}, and the classifier returned for it
+   */
+  private WroModel lastModel;
+
+  private ResourceClassifier lastModelClassifier;
+
+  /**
+   * @param extensions comma or whitespace separated list of extensions, with or without leading
+   *          dot
+   */
+  ResourceClassifier(String extensions, ScanFilter filter) {
+    this(extensions, filter, extensions);
+  }
+
+  private ResourceClassifier(String extensions, ScanFilter filter, String key) {
+    this.key = key;
+    this.filter = filter;
+    this.root = new Node();
+    for (String extension : extensions.split("[,\\s]+")) {
+      String ext = extension.trim();
+      if (ext.startsWith(".")) {
+        ext = ext.substring(1);
+      }
+      if (ext.length() > 0) {
+        add(ext);
+      }
+    }
+  }
+
+  private ResourceClassifier(ResourceClassifier classifier, ScanFilter filter) {
+    this.key = classifier.key;
+    this.filter = filter;
+    this.root = classifier.root;
+  }
+
+  static ResourceClassifier getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   * @param extensions the web resource extensions, the default ones if <code>null</code> or empty
+   * @param includes the include patterns, see {@link ScanFilter}
+   * @param excludes the exclude patterns, the default ones if <code>null</code>
+   * @return a classifier for the given extensions and patterns, or the default one if none is
+   *         given
+   */
+  static ResourceClassifier get(String extensions, String includes, String excludes) {
+    boolean defaultExtensions = extensions == null || extensions.trim().length() == 0;
+    if (defaultExtensions && includes == null && excludes == null) {
+      return DEFAULT;
+    }
+    String key = extensions + '|' + includes + '|' + excludes;
+    ResourceClassifier classifier = custom;
+    if (classifier == null || !classifier.key.equals(key)) {
+      classifier = new ResourceClassifier(defaultExtensions ? DEFAULT_EXTENSIONS : extensions, new ScanFilter(
+          includes, excludes), key);
+      custom = classifier;
+    }
+    return classifier;
+  }
+
+  /**
+   * @return a classifier also accepting the resources the model references, even if the include
+   *         and exclude patterns reject them, see {@link ScanFilter#exempting(WroModel)}
+   */
+  synchronized ResourceClassifier forModel(WroModel model) {
+    if (model != lastModel) {
+      ScanFilter modelFilter = filter.exempting(model);
+      lastModelClassifier = modelFilter == filter ? this : new ResourceClassifier(this, modelFilter);
+      lastModel = model;
+    }
+    return lastModelClassifier;
+  }
+
+  private void add(String extension) {
+    Node node = root;
+    for (int i = extension.length() - 1; i >= 0; i--) {
+      char c = toLowerCase(extension.charAt(i));
+      if (c >= Node.SIZE) {
+        // Non ascii extensions can't match anyway
+        return;
+      }
+      if (node.children[c] == null) {
+        node.children[c] = new Node();
+      }
+      node = node.children[c];
+    }
+    node.terminal = true;
+  }
+
+  /**
+   * @param path a file path, using either '/' or '\' as separator
+   */
+  Kind classify(String path) {
+    int nameStart = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) + 1;
+    if (isDescriptor(path, nameStart)) {
+      return filter.isIncluded(path) ? Kind.DESCRIPTOR : Kind.IGNORED;
+    }
+    Node node = root;
+    for (int i = path.length() - 1; i > nameStart; i--) {
+      char c = toLowerCase(path.charAt(i));
+      if (c == '.') {
+        return node.terminal && filter.isIncluded(path) ? Kind.WEB_RESOURCE : Kind.IGNORED;
+      }
+      if (c >= Node.SIZE) {
+        return Kind.IGNORED;
+      }
+      node = node.children[c];
+      if (node == null) {
+        return Kind.IGNORED;
+      }
+    }
+    return Kind.IGNORED;
+  }
+
+  boolean isDescriptor(String path) {
+    return classify(path) == Kind.DESCRIPTOR;
+  }
+
+  boolean isWebResource(String path) {
+    return classify(path) == Kind.WEB_RESOURCE;
+  }
+
+  /**
+   * @param folder a folder path relative to a context folder
+   * @return <code>true</code> if the folder must not be walked, nothing under it being included
+   */
+  boolean isPruned(String folder) {
+    return filter.isPruned(folder);
+  }
+
+  private static boolean isDescriptor(String path, int nameStart) {
+    int nameLength = path.length() - nameStart;
+    for (String descriptor : DESCRIPTORS) {
+      if (nameLength == descriptor.length() && path.startsWith(descriptor, nameStart)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static char toLowerCase(char c) {
+    return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+  }
+
+  private static class Node {
+
+    private static final int SIZE = 128;
+
+    private final Node[] children = new Node[SIZE];
+
+    private boolean terminal;
+  }
+}
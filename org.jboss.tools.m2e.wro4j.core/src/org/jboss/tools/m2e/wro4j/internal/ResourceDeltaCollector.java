@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Collects the files added, removed or whose content changed under a set of root folders (context
+ * folders, output classes folder), walking a resource delta. Subtrees which can't contain a root,
+ * or which are excluded by the resource classifier, are never visited, so the cost only depends on
+ * the size of the delta. Files belong to the most specific root holding them, and the files wro4j
+ * generates within a root are left out.
+ */
+class ResourceDeltaCollector implements IResourceDeltaVisitor {
+
+  private static final int CONTENT_CHANGES = IResourceDelta.CONTENT | IResourceDelta.REPLACED;
+
+  /**
+   * Most specific roots first
+   */
+  private final List<Root> roots = new ArrayList<Root>();
+
+  private final List<IPath> outputPaths = new ArrayList<IPath>();
+
+  private final Map<String, File> changedFiles;
+
+  private final ResourceClassifier classifier;
+
+  /**
+   * @param changedFiles receives the changed files, keyed by their path relative to their root,
+   *          prefixed by the root uri prefix
+   */
+  ResourceDeltaCollector(Map<String, File> changedFiles, ResourceClassifier classifier) {
+    this.changedFiles = changedFiles;
+    this.classifier = classifier;
+  }
+
+  /**
+   * @param uriPrefix prefix of the keys of the files found under this root, ie.
+   *          <code>classpath:/</code>
+   */
+  void addRoot(IContainer container, String uriPrefix) {
+    Root root = new Root(container.getFullPath(), uriPrefix);
+    int i = 0;
+    while (i < roots.size() && roots.get(i).path.segmentCount() >= root.path.segmentCount()) {
+      i++;
+    }
+    roots.add(i, root);
+  }
+
+  /**
+   * Leaves out a folder or a file wro4j writes to, unless it's a whole root.
+   *
+   * @param path the workspace path of the output
+   */
+  void addOutput(IPath path) {
+    outputPaths.add(path);
+  }
+
+  boolean hasRoots() {
+    return !roots.isEmpty();
+  }
+
+  public boolean visit(IResourceDelta delta) {
+    IResource resource = delta.getResource();
+    IPath path = resource.getFullPath();
+    Root root = getRoot(path);
+    if (root == null) {
+      // walk down to the roots
+      return resource.getType() != IResource.FILE && hasRootUnder(path);
+    }
+    if (isOutput(root, path)) {
+      // the build's own outputs
+      return hasRootUnder(path);
+    }
+    if (resource.getType() != IResource.FILE) {
+      return !classifier.isPruned(path.makeRelativeTo(root.path).toString()) || hasRootUnder(path);
+    }
+    if (delta.getKind() == IResourceDelta.CHANGED && (delta.getFlags() & CONTENT_CHANGES) == 0) {
+      // markers or properties change
+      return false;
+    }
+    String key = root.uriPrefix + path.makeRelativeTo(root.path).toString();
+    if (!changedFiles.containsKey(key) && resource.getLocation() != null) {
+      changedFiles.put(key, resource.getLocation().toFile());
+    }
+    return false;
+  }
+
+  /**
+   * @return the most specific root holding the given path, or <code>null</code>
+   */
+  private Root getRoot(IPath path) {
+    for (Root root : roots) {
+      if (root.path.isPrefixOf(path)) {
+        return root;
+      }
+    }
+    return null;
+  }
+
+  private boolean hasRootUnder(IPath path) {
+    for (Root root : roots) {
+      if (path.isPrefixOf(root.path) && !path.equals(root.path)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isOutput(Root root, IPath path) {
+    for (IPath outputPath : outputPaths) {
+      // outputs holding the whole root, like a destination folder set to the build directory
+      // holding the output classes folder, don't hide its resources
+      if (outputPath.isPrefixOf(path) && root.path.isPrefixOf(outputPath)
+          && outputPath.segmentCount() > root.path.segmentCount()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static class Root {
+
+    private final IPath path;
+
+    private final String uriPrefix;
+
+    Root(IPath path, String uriPrefix) {
+      this.path = path;
+      this.uriPrefix = uriPrefix;
+    }
+  }
+}
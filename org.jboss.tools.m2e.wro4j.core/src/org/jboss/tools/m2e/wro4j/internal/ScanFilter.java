@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Include and exclude patterns applied to the paths found under the context folders, using the
+ * usual ant syntax : <code>**</code> spans folders, <code>*</code> and <code>?</code> stay within a
+ * folder. Folders matched by an exclude pattern ending with <code>/**</code> are pruned, so
+ * dependency and cache folders are never walked. Resources a wro model references are included
+ * whatever the patterns, see {@link #exempting(WroModel)}.
+ */
+class ScanFilter {
+
+  static final String DEFAULT_EXCLUDES = "**/node_modules/**,**/bower_components/**,**/.sass-cache/**,**/.git/**";
+
+  private static final String SEPARATORS = "[,\\s]+";
+
+  private static final String ANY_DESCENDANT = "/**";
+
+  /**
+   * <code>null</code> if everything is included
+   */
+  private final Pattern includes;
+
+  /**
+   * <code>null</code> if nothing is excluded
+   */
+  private final Pattern excludes;
+
+  /**
+   * <code>null</code> if no folder is pruned
+   */
+  private final Pattern prunedFolders;
+
+  /**
+   * Resources referenced by the model, by path
+   */
+  private final Set<String> referencedPaths;
+
+  /**
+   * Resources referenced by the model through wildcards, <code>null</code> if none
+   */
+  private final Pattern referencedPatterns;
+
+  /**
+   * Folders holding referenced resources, which are never pruned
+   */
+  private final Set<String> referencedFolders;
+
+  /**
+   * Folders anything under which can be referenced through a wildcard, with a trailing slash
+   */
+  private final List<String> wildcardFolders;
+
+  /**
+   * @param includes comma or whitespace separated list of patterns, everything is included if
+   *          <code>null</code> or empty
+   * @param excludes comma or whitespace separated list of patterns, {@link #DEFAULT_EXCLUDES} are
+   *          used if <code>null</code>
+   */
+  ScanFilter(String includes, String excludes) {
+    this.includes = toPattern(includes, false);
+    String excludePatterns = excludes == null ? DEFAULT_EXCLUDES : excludes;
+    this.excludes = toPattern(excludePatterns, false);
+    this.prunedFolders = toPattern(excludePatterns, true);
+    this.referencedPaths = Collections.emptySet();
+    this.referencedPatterns = null;
+    this.referencedFolders = Collections.emptySet();
+    this.wildcardFolders = Collections.emptyList();
+  }
+
+  private ScanFilter(ScanFilter filter, Set<String> referencedPaths, Pattern referencedPatterns,
+      Set<String> referencedFolders, List<String> wildcardFolders) {
+    this.includes = filter.includes;
+    this.excludes = filter.excludes;
+    this.prunedFolders = filter.prunedFolders;
+    this.referencedPaths = referencedPaths;
+    this.referencedPatterns = referencedPatterns;
+    this.referencedFolders = referencedFolders;
+    this.wildcardFolders = wildcardFolders;
+  }
+
+  /**
+   * Wro groups commonly use vendor files from folders excluded by default, like
+   * <code>bower_components</code>, whose changes must still be seen.
+   *
+   * @return a filter also including the local resources the model references, and not pruning the
+   *         folders holding them, or this filter if it includes everything anyway
+   */
+  ScanFilter exempting(WroModel model) {
+    if (includes == null && excludes == null) {
+      return this;
+    }
+    Set<String> paths = new HashSet<String>();
+    StringBuilder patterns = new StringBuilder();
+    Set<String> folders = new HashSet<String>();
+    List<String> openFolders = new ArrayList<String>();
+    for (WroModel.Group group : model.getGroups()) {
+      for (String resource : group.getResources()) {
+        String uri = WroModel.normalize(resource);
+        if (!uri.startsWith(WroModel.CLASSPATH_PREFIX) && uri.indexOf(':') > 0) {
+          // external resources aren't scanned
+          continue;
+        }
+        String path = normalize(uri);
+        int wildcard = indexOfWildcard(path);
+        if (wildcard < 0) {
+          paths.add(path);
+        } else {
+          if (patterns.length() > 0) {
+            patterns.append('|');
+          }
+          appendRegex(patterns, path);
+        }
+        int folderEnd = path.lastIndexOf('/', wildcard < 0 ? path.length() : wildcard);
+        if (wildcard >= 0) {
+          openFolders.add(path.substring(0, folderEnd + 1));
+        }
+        for (int end = folderEnd; end > 0; end = path.lastIndexOf('/', end - 1)) {
+          folders.add(path.substring(0, end));
+        }
+      }
+    }
+    if (paths.isEmpty() && patterns.length() == 0) {
+      return this;
+    }
+    return new ScanFilter(this, paths, patterns.length() == 0 ? null : Pattern.compile(patterns.toString()), folders,
+        openFolders);
+  }
+
+  /**
+   * @param path a file path relative to a context folder, or a resource uri
+   */
+  boolean isIncluded(String path) {
+    if (includes == null && excludes == null) {
+      return true;
+    }
+    String relativePath = normalize(path);
+    return ((includes == null || includes.matcher(relativePath).matches())
+        && (excludes == null || !excludes.matcher(relativePath).matches())) || isReferenced(relativePath);
+  }
+
+  /**
+   * @param folder a folder path relative to a context folder
+   * @return <code>true</code> if nothing under the folder can be included
+   */
+  boolean isPruned(String folder) {
+    if (prunedFolders == null) {
+      return false;
+    }
+    String relativePath = normalize(folder);
+    if (referencedFolders.isEmpty() && wildcardFolders.isEmpty()) {
+      return prunedFolders.matcher(relativePath).matches();
+    }
+    if (holdsReferences(relativePath)) {
+      return false;
+    }
+    // pruned folders holding references are walked, but only down to the referenced resources
+    for (int end = relativePath.length(); end > 0; end = relativePath.lastIndexOf('/', end - 1)) {
+      if (prunedFolders.matcher(relativePath.substring(0, end)).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean isReferenced(String relativePath) {
+    return referencedPaths.contains(relativePath)
+        || (referencedPatterns != null && referencedPatterns.matcher(relativePath).matches());
+  }
+
+  private boolean holdsReferences(String relativeFolder) {
+    if (referencedFolders.contains(relativeFolder)) {
+      return true;
+    }
+    for (String wildcardFolder : wildcardFolders) {
+      if (relativeFolder.startsWith(wildcardFolder)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int indexOfWildcard(String path) {
+    int star = path.indexOf('*');
+    int question = path.indexOf('?');
+    return star < 0 ? question : question < 0 ? star : Math.min(star, question);
+  }
+
+  private static String normalize(String path) {
+    String portablePath = path.replace('\\', '/');
+    if (portablePath.startsWith(WroModel.CLASSPATH_PREFIX)) {
+      portablePath = portablePath.substring(WroModel.CLASSPATH_PREFIX.length());
+    }
+    int start = 0;
+    while (start < portablePath.length() && portablePath.charAt(start) == '/') {
+      start++;
+    }
+    int end = portablePath.length();
+    while (end > start && portablePath.charAt(end - 1) == '/') {
+      end--;
+    }
+    return portablePath.substring(start, end);
+  }
+
+  /**
+   * @param folders <code>true</code> to only keep the patterns excluding whole folders, matching
+   *          the folders themselves
+   * @return a pattern matching any of the given ones, or <code>null</code> if there are none
+   */
+  private static Pattern toPattern(String patterns, boolean folders) {
+    if (patterns == null) {
+      return null;
+    }
+    StringBuilder regex = new StringBuilder();
+    for (String token : patterns.trim().split(SEPARATORS)) {
+      String pattern = token.replace('\\', '/');
+      if (pattern.endsWith("/")) {
+        // ant shorthand for everything under a folder
+        pattern += "**";
+      }
+      while (pattern.startsWith("/")) {
+        pattern = pattern.substring(1);
+      }
+      if (folders) {
+        if (!pattern.endsWith(ANY_DESCENDANT)) {
+          continue;
+        }
+        pattern = pattern.substring(0, pattern.length() - ANY_DESCENDANT.length());
+      }
+      if (pattern.length() == 0) {
+        continue;
+      }
+      if (regex.length() > 0) {
+        regex.append('|');
+      }
+      appendRegex(regex, pattern);
+    }
+    return regex.length() == 0 ? null : Pattern.compile(regex.toString());
+  }
+
+  private static void appendRegex(StringBuilder regex, String pattern) {
+    regex.append("(?:");
+    int i = 0;
+    while (i < pattern.length()) {
+      if (pattern.startsWith("**/", i)) {
+        // zero or more folders
+        regex.append("(?:.*/)?");
+        i += 3;
+      } else if (pattern.startsWith("/**", i) && i + 3 == pattern.length()) {
+        // the folder itself or anything under it
+        regex.append("(?:/.*)?");
+        i += 3;
+      } else if (pattern.startsWith("**", i)) {
+        regex.append(".*");
+        i += 2;
+      } else {
+        char c = pattern.charAt(i);
+        if (c == '*') {
+          regex.append("[^/]*");
+        } else if (c == '?') {
+          regex.append("[^/]");
+        } else {
+          regex.append(Pattern.quote(String.valueOf(c)));
+        }
+        i++;
+      }
+    }
+    regex.append(')');
+  }
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.sonatype.plexus.build.incremental.BuildContext;
+
+/**
+ * Workspace wide registry of the files generated for wro4j groups, indexed by a key identifying
+ * everything the content of a group depends on : its definition, the content of its resources and
+ * the processing configuration, but not where it's written. Projects sharing context folders can
+ * then copy a group built by another project instead of processing it again.
+ */
+class SharedGroupOutputs {
+
+  static final int MAX_ENTRIES = 1000;
+
+  private static final Map<Long, Map<String, Output>> OUTPUTS = new LinkedHashMap<Long, Map<String, Output>>(16,
+      0.75f, true) {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Long, Map<String, Output>> eldest) {
+      return size() > MAX_ENTRIES;
+    }
+  };
+
+  private SharedGroupOutputs() {
+  }
+
+  /**
+   * Computes the key of a group.
+   *
+   * @param processingKey identifies the mojo and its configuration, output locations excluded
+   * @param groupSignature the definition of the group, see {@link WroModel#getGroupSignature(String)}
+   * @param inputFingerprint the fingerprint of the group resources
+   */
+  static long computeKey(long processingKey, String groupSignature, long inputFingerprint) {
+    Crc64 crc = new Crc64();
+    crc.update(processingKey);
+    crc.update(groupSignature);
+    crc.update(inputFingerprint);
+    return crc.getValue();
+  }
+
+  /**
+   * Records the files generated for a group, so other projects can reuse them.
+   */
+  static void register(long key, Collection<File> files) {
+    Map<String, Output> outputs = new HashMap<String, Output>();
+    for (File file : files) {
+      try {
+        outputs.put(getExtension(file), new Output(file, Crc64.digest(file)));
+      } catch (IOException e) {
+        return;
+      }
+    }
+    if (outputs.isEmpty()) {
+      return;
+    }
+    synchronized (OUTPUTS) {
+      OUTPUTS.put(Long.valueOf(key), outputs);
+    }
+  }
+
+  /**
+   * Copies the files registered for a group to the given targets, matched by extension, if they
+   * still have the content they were registered with.
+   *
+   * @param targets the files wro4j would generate for the group
+   * @return <code>false</code> if nothing valid was registered for the group, it must then be built
+   */
+  static boolean copy(long key, Collection<File> targets, BuildContext buildContext) throws IOException {
+    Map<String, Output> outputs;
+    synchronized (OUTPUTS) {
+      outputs = OUTPUTS.get(Long.valueOf(key));
+    }
+    if (outputs == null) {
+      return false;
+    }
+    Map<String, File> targetsByExtension = new HashMap<String, File>();
+    for (File target : targets) {
+      targetsByExtension.put(getExtension(target), target);
+    }
+    Map<File, File> copies = new HashMap<File, File>();
+    for (Map.Entry<String, Output> output : outputs.entrySet()) {
+      File target = targetsByExtension.get(output.getKey());
+      if (target == null) {
+        return false;
+      }
+      if (!output.getValue().isValid()) {
+        // overwritten or deleted since
+        synchronized (OUTPUTS) {
+          OUTPUTS.remove(Long.valueOf(key));
+        }
+        return false;
+      }
+      if (!output.getValue().file.equals(target.getAbsoluteFile())) {
+        copies.put(output.getValue().file, target);
+      }
+    }
+    for (Map.Entry<File, File> copy : copies.entrySet()) {
+      File target = copy.getValue();
+      if (target.getParentFile() != null) {
+        target.getParentFile().mkdirs();
+      }
+      InputStream in = new FileInputStream(copy.getKey());
+      try {
+        OutputStream out = buildContext.newFileOutputStream(target);
+        try {
+          IOUtil.copy(in, out);
+        } finally {
+          out.close();
+        }
+      } finally {
+        IOUtil.close(in);
+      }
+    }
+    return true;
+  }
+
+  private static String getExtension(File file) {
+    String name = file.getName();
+    int dot = name.lastIndexOf('.');
+    return dot < 0 ? "" : name.substring(dot);
+  }
+
+  private static class Output {
+
+    private final File file;
+
+    private final long digest;
+
+    Output(File file, long digest) {
+      this.file = file.getAbsoluteFile();
+      this.digest = digest;
+    }
+
+    boolean isValid() {
+      try {
+        return file.isFile() && Crc64.digest(file) == digest;
+      } catch (IOException e) {
+        return false;
+      }
+    }
+  }
+}
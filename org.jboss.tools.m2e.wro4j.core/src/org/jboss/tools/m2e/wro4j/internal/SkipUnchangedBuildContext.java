@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.sonatype.plexus.build.incremental.BuildContext;
+
+/**
+ * {@link BuildContext} whose output streams only write to disk if the content differs from the
+ * existing file, so identical bundles keep their timestamp. Output is buffered in memory, then in a
+ * temporary file past {@link #MEMORY_THRESHOLD} bytes.
+ */
+class SkipUnchangedBuildContext extends ForwardingBuildContext {
+
+  static final int MEMORY_THRESHOLD = 1024 * 1024;
+
+  private final AtomicInteger skippedWrites = new AtomicInteger();
+
+  private final AtomicLong writtenBytes = new AtomicLong();
+
+  private final AtomicLong skippedBytes = new AtomicLong();
+
+  SkipUnchangedBuildContext(BuildContext delegate) {
+    super(delegate);
+  }
+
+  @Override
+  public OutputStream newFileOutputStream(File file) throws IOException {
+    return new ChangedContentOutputStream(file);
+  }
+
+  /**
+   * @return the number of files which were not written because their content didn't change
+   */
+  int getSkippedWrites() {
+    return skippedWrites.get();
+  }
+
+  /**
+   * @return the number of bytes actually written to disk
+   */
+  long getWrittenBytes() {
+    return writtenBytes.get();
+  }
+
+  /**
+   * @return the number of bytes which were not written because their content didn't change
+   */
+  long getSkippedBytes() {
+    return skippedBytes.get();
+  }
+
+  private class ChangedContentOutputStream extends OutputStream {
+
+    private final File file;
+
+    private final Crc64 crc = new Crc64();
+
+    private long length;
+
+    private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+
+    private File spillFile;
+
+    private OutputStream spill;
+
+    private boolean closed;
+
+    ChangedContentOutputStream(File file) {
+      this.file = file;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (closed) {
+        throw new IOException("Stream closed");
+      }
+      crc.update(b, off, len);
+      length += len;
+      if (spill == null && memory.size() + len > MEMORY_THRESHOLD) {
+        spillFile = File.createTempFile("m2e-wro4j", ".tmp");
+        spill = new BufferedOutputStream(new FileOutputStream(spillFile));
+        memory.writeTo(spill);
+        memory = null;
+      }
+      if (spill != null) {
+        spill.write(b, off, len);
+      } else {
+        memory.write(b, off, len);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (spill != null) {
+        spill.flush();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        if (spill != null) {
+          spill.close();
+        }
+        if (isUnchanged()) {
+          skippedWrites.incrementAndGet();
+          skippedBytes.addAndGet(length);
+          return;
+        }
+        OutputStream out = getDelegate().newFileOutputStream(file);
+        try {
+          if (spillFile == null) {
+            memory.writeTo(out);
+          } else {
+            InputStream in = new FileInputStream(spillFile);
+            try {
+              IOUtil.copy(in, out);
+            } finally {
+              IOUtil.close(in);
+            }
+          }
+        } finally {
+          out.close();
+        }
+        writtenBytes.addAndGet(length);
+      } finally {
+        if (spillFile != null) {
+          spillFile.delete();
+        }
+        memory = null;
+      }
+    }
+
+    private boolean isUnchanged() {
+      if (!file.isFile() || file.length() != length) {
+        return false;
+      }
+      try {
+        return Crc64.digest(file) == crc.getValue();
+      } catch (IOException e) {
+        return false;
+      }
+    }
+  }
+}
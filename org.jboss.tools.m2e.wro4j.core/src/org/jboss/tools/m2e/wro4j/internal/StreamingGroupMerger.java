@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.codehaus.plexus.util.DirectoryScanner;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Builds groups which only need their resources to be concatenated, without any processing, by
+ * streaming the resource files straight into the bundles with {@link FileChannel#transferTo}, so
+ * memory usage doesn't depend on the size of the groups. Bundles whose content didn't change are
+ * left untouched.
+ */
+class StreamingGroupMerger {
+
+  private static final String CSS = ".css";
+
+  private static final String JS = ".js";
+
+  private static final byte[] SEPARATOR = {'\n'};
+
+  private final Collection<File> contextRoots;
+
+  private final File classpathRoot;
+
+  private int skippedWrites;
+
+  /**
+   * @param classpathRoot the folder <code>classpath:</code> resources are read from, may be
+   *          <code>null</code>
+   */
+  StreamingGroupMerger(Collection<File> contextRoots, File classpathRoot) {
+    this.contextRoots = contextRoots;
+    this.classpathRoot = classpathRoot;
+  }
+
+  /**
+   * Concatenates the resources of a group in its bundles.
+   *
+   * @param outputs the bundles of the group, their extension telling which resources they hold
+   * @return <code>false</code> if the group can't be merged that way : it references other groups,
+   *         resources which are not plain css or js files, or resources which can't be found. It
+   *         must then be built by wro4j.
+   */
+  boolean merge(WroModel.Group group, Collection<File> outputs) throws IOException {
+    if (!group.getGroupRefs().isEmpty()) {
+      // the order of resources and referenced groups isn't known
+      return false;
+    }
+    List<File> cssFiles = new ArrayList<File>();
+    List<File> jsFiles = new ArrayList<File>();
+    for (String resource : group.getResources()) {
+      String uri = WroModel.normalize(resource);
+      List<File> files;
+      if (uri.endsWith(CSS)) {
+        files = cssFiles;
+      } else if (uri.endsWith(JS)) {
+        files = jsFiles;
+      } else {
+        return false;
+      }
+      if (!resolve(uri, files)) {
+        return false;
+      }
+    }
+    for (File output : outputs) {
+      List<File> files = output.getName().endsWith(CSS) ? cssFiles : output.getName().endsWith(JS) ? jsFiles : null;
+      if (files != null && !files.isEmpty()) {
+        write(files, output);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the number of bundles which were not written because their content didn't change
+   */
+  int getSkippedWrites() {
+    return skippedWrites;
+  }
+
+  /**
+   * Adds the files matching a resource uri, looking in the context folders in order.
+   */
+  private boolean resolve(String uri, List<File> files) {
+    Collection<File> roots;
+    String path;
+    if (uri.startsWith(WroModel.CLASSPATH_PREFIX)) {
+      if (classpathRoot == null) {
+        return false;
+      }
+      roots = Arrays.asList(classpathRoot);
+      path = uri.substring(WroModel.CLASSPATH_PREFIX.length() + 1);
+    } else if (uri.indexOf(':') > 0) {
+      // remote resources are left to wro4j
+      return false;
+    } else {
+      roots = contextRoots;
+      path = uri.substring(1);
+    }
+    for (File root : roots) {
+      if (path.indexOf('*') < 0 && path.indexOf('?') < 0) {
+        File file = new File(root, path);
+        if (file.isFile()) {
+          files.add(file);
+          return true;
+        }
+      } else if (root.isDirectory()) {
+        DirectoryScanner ds = new DirectoryScanner();
+        ds.setBasedir(root);
+        ds.setIncludes(new String[] {path});
+        ds.scan();
+        String[] matches = ds.getIncludedFiles();
+        if (matches.length > 0) {
+          Arrays.sort(matches);
+          for (String match : matches) {
+            files.add(new File(root, match));
+          }
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private void write(List<File> files, File output) throws IOException {
+    File folder = output.getAbsoluteFile().getParentFile();
+    if (!folder.isDirectory() && !folder.mkdirs()) {
+      throw new IOException("Can't create " + folder);
+    }
+    File temp = File.createTempFile(output.getName(), ".tmp", folder);
+    try {
+      FileOutputStream out = new FileOutputStream(temp);
+      try {
+        FileChannel target = out.getChannel();
+        for (File file : files) {
+          FileInputStream in = new FileInputStream(file);
+          try {
+            FileChannel source = in.getChannel();
+            long size = source.size();
+            for (long position = 0; position < size;) {
+              long transferred = source.transferTo(position, size - position, target);
+              if (transferred <= 0) {
+                // truncated in the meantime
+                break;
+              }
+              position += transferred;
+            }
+          } finally {
+            IOUtil.close(in);
+          }
+          target.write(ByteBuffer.wrap(SEPARATOR));
+        }
+      } finally {
+        IOUtil.close(out);
+      }
+      if (output.isFile() && output.length() == temp.length() && Crc64.digest(output) == Crc64.digest(temp)) {
+        skippedWrites++;
+        return;
+      }
+      if ((output.exists() && !output.delete()) || !temp.renameTo(output)) {
+        throw new IOException("Can't write " + output);
+      }
+    } finally {
+      temp.delete();
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sonatype.plexus.build.incremental.BuildContext;
+
+/**
+ * {@link BuildContext} recording the files the mojo writes or asks to refresh, so only those are
+ * refreshed in the workspace once the mojo is done. Files rewritten with the same bytes get their
+ * previous timestamp back and are not refreshed at all, so downstream builders see no delta.
+ */
+class TrackingBuildContext extends ForwardingBuildContext {
+
+  private final Map<File, Snapshot> snapshots = new LinkedHashMap<File, Snapshot>();
+
+  TrackingBuildContext(BuildContext delegate) {
+    super(delegate);
+  }
+
+  @Override
+  public OutputStream newFileOutputStream(File file) throws IOException {
+    track(file);
+    return super.newFileOutputStream(file);
+  }
+
+  @Override
+  public void refresh(File file) {
+    // deferred until the mojo is done
+    track(file);
+  }
+
+  /**
+   * Records the current state of a file the mojo is about to write, unless it was already recorded.
+   */
+  synchronized void track(File file) {
+    File absoluteFile = file.getAbsoluteFile();
+    if (!snapshots.containsKey(absoluteFile)) {
+      snapshots.put(absoluteFile, Snapshot.take(absoluteFile));
+    }
+  }
+
+  synchronized boolean hasTrackedFiles() {
+    return !snapshots.isEmpty();
+  }
+
+  /**
+   * Refreshes the tracked files whose content changed. Folders are only refreshed when no tracked
+   * file lives under them.
+   *
+   * @return the refreshed files
+   */
+  synchronized List<File> refreshChangedFiles(BuildContext buildContext) {
+    List<File> refreshed = new ArrayList<File>();
+    List<File> folders = new ArrayList<File>();
+    for (Map.Entry<File, Snapshot> entry : snapshots.entrySet()) {
+      File file = entry.getKey();
+      Snapshot snapshot = entry.getValue();
+      if (file.isDirectory()) {
+        folders.add(file);
+      } else if (snapshot == Snapshot.MISSING && !file.exists()) {
+        // expected, but not written
+        continue;
+      } else if (!snapshot.restoreIfUnchanged(file)) {
+        buildContext.refresh(file);
+        refreshed.add(file);
+      }
+    }
+    for (File folder : folders) {
+      if (!containsTrackedFile(folder)) {
+        buildContext.refresh(folder);
+        refreshed.add(folder);
+      }
+    }
+    return refreshed;
+  }
+
+  private boolean containsTrackedFile(File folder) {
+    String prefix = folder.getPath() + File.separator;
+    for (File file : snapshots.keySet()) {
+      if (file.getPath().startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static class Snapshot {
+
+    private static final Snapshot MISSING = new Snapshot(-1, -1);
+
+    private final long lastModified;
+
+    private final long digest;
+
+    Snapshot(long lastModified, long digest) {
+      this.lastModified = lastModified;
+      this.digest = digest;
+    }
+
+    static Snapshot take(File file) {
+      if (!file.isFile()) {
+        return MISSING;
+      }
+      try {
+        return new Snapshot(file.lastModified(), Crc64.digest(file));
+      } catch (IOException e) {
+        return MISSING;
+      }
+    }
+
+    /**
+     * Gives its previous timestamp back to a file rewritten with the same content, so the workspace
+     * still considers it in sync.
+     *
+     * @return <code>true</code> if the file content didn't change
+     */
+    boolean restoreIfUnchanged(File file) {
+      if (this == MISSING || !file.isFile()) {
+        return false;
+      }
+      try {
+        if (Crc64.digest(file) != digest) {
+          return false;
+        }
+      } catch (IOException e) {
+        return false;
+      }
+      return file.lastModified() == lastModified || file.setLastModified(lastModified);
+    }
+  }
+}
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collection;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.Mojo;
+import org.apache.maven.plugin.MojoExecution;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.m2e.core.MavenPlugin;
+
+/**
+ * A configured wro4j mojo kept across builds, so its wro manager factory, processors and script
+ * engines don't have to be set up again on every build. Only the groups to build change from one
+ * run to the next, the engine must be released as soon as the pom, the descriptors or the mojo
+ * configuration change. The mojo is driven through wro4j internals, looked up by reflection : if any
+ * of them is missing or fails, the engine gives up and the mojo must be executed the usual way.
+ */
+class WarmEngine {
+
+  private final long key;
+
+  private final MojoExecution execution;
+
+  private final Mojo mojo;
+
+  private final Method setTargetGroups;
+
+  private final Method getManagerFactory;
+
+  /**
+   * Looked up on the first manager factory, <code>null</code> until then
+   */
+  private Method onCachePeriodChanged;
+
+  private WarmEngine(long key, MojoExecution execution, Mojo mojo, Method setTargetGroups, Method getManagerFactory) {
+    this.key = key;
+    this.execution = execution;
+    this.mojo = mojo;
+    this.setTargetGroups = setTargetGroups;
+    this.getManagerFactory = getManagerFactory;
+  }
+
+  /**
+   * @param configuration the customized mojo configuration, without targetGroups restriction
+   * @param key identifies the descriptors and configuration the engine is created for
+   * @return a new engine, or <code>null</code> if the mojo can't be driven that way
+   */
+  static WarmEngine create(MavenSession session, MojoExecution template, Xpp3Dom configuration, long key)
+      throws CoreException {
+    MojoExecution execution = ResolvedConfiguration.newExecution(template, new Xpp3Dom(configuration));
+    Mojo mojo = MavenPlugin.getMaven().getConfiguredMojo(session, execution, Mojo.class);
+    try {
+      Method setTargetGroups = mojo.getClass().getMethod("setTargetGroups", String.class);
+      // without it, group contents cached by previous runs would be served again
+      Method getManagerFactory = findMethod(mojo.getClass(), "getManagerFactory");
+      getManagerFactory.setAccessible(true);
+      return new WarmEngine(key, execution, mojo, setTargetGroups, getManagerFactory);
+    } catch (NoSuchMethodException e) {
+      // another wro4j version
+    } catch (SecurityException e) {
+      // not allowed to reach into wro4j
+    }
+    MavenPlugin.getMaven().releaseMojo(mojo, execution);
+    return null;
+  }
+
+  boolean isFor(long engineKey) {
+    return key == engineKey;
+  }
+
+  /**
+   * Builds the given groups, failures being added to the session result, like m2e does.
+   *
+   * @param groups the groups to build
+   * @return <code>false</code> if the engine couldn't be driven, it must then be released and the
+   *         mojo executed the usual way
+   */
+  boolean execute(MavenSession session, Collection<String> groups) {
+    StringBuilder targetGroups = new StringBuilder();
+    for (String group : groups) {
+      if (targetGroups.length() > 0) {
+        targetGroups.append(',');
+      }
+      targetGroups.append(group);
+    }
+    Thread thread = Thread.currentThread();
+    ClassLoader contextClassLoader = thread.getContextClassLoader();
+    thread.setContextClassLoader(mojo.getClass().getClassLoader());
+    try {
+      try {
+        setTargetGroups.invoke(mojo, targetGroups.toString());
+        clearCache();
+      } catch (NoSuchMethodException e) {
+        return false;
+      } catch (IllegalAccessException e) {
+        return false;
+      } catch (InvocationTargetException e) {
+        return false;
+      } catch (IllegalArgumentException e) {
+        return false;
+      } catch (SecurityException e) {
+        return false;
+      }
+      try {
+        mojo.execute();
+      } catch (Exception e) {
+        session.getResult().addException(e);
+      } catch (LinkageError e) {
+        session.getResult().addException(e);
+      }
+      return true;
+    } finally {
+      thread.setContextClassLoader(contextClassLoader);
+    }
+  }
+
+  void release() {
+    try {
+      MavenPlugin.getMaven().releaseMojo(mojo, execution);
+    } catch (CoreException e) {
+      // nothing more we can do
+    }
+  }
+
+  /**
+   * Makes sure group contents cached by a previous run won't be served again, the model and
+   * processors are kept.
+   */
+  private void clearCache() throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+    Object managerFactory = getManagerFactory.invoke(mojo);
+    if (managerFactory == null) {
+      // created by the first run
+      return;
+    }
+    if (onCachePeriodChanged == null || !onCachePeriodChanged.getDeclaringClass().isInstance(managerFactory)) {
+      onCachePeriodChanged = managerFactory.getClass().getMethod("onCachePeriodChanged", long.class);
+    }
+    onCachePeriodChanged.invoke(managerFactory, Long.valueOf(0));
+  }
+
+  private static Method findMethod(Class<?> type, String name) throws NoSuchMethodException {
+    for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+      for (Method method : c.getDeclaredMethods()) {
+        if (method.getName().equals(name) && method.getParameterTypes().length == 0) {
+          return method;
+        }
+      }
+    }
+    throw new NoSuchMethodException(type.getName() + "." + name + "()");
+  }
+}
@@ -9,35 +9,41 @@
 package org.jboss.tools.m2e.wro4j.internal;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.TreeSet;
 
 import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.IOUtil;
 import org.codehaus.plexus.util.Scanner;
 import org.codehaus.plexus.util.xml.Xpp3Dom;
-import org.codehaus.plexus.util.xml.Xpp3DomUtils;
-import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.resources.IncrementalProjectBuilder;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.m2e.core.MavenPlugin;
-import org.eclipse.m2e.core.embedder.IMaven;
 import org.eclipse.m2e.core.project.IMavenProjectFacade;
-import org.eclipse.m2e.core.project.MavenProjectUtils;
 import org.eclipse.m2e.core.project.configurator.MojoExecutionBuildParticipant;
 import org.eclipse.osgi.util.NLS;
 import org.sonatype.plexus.build.incremental.BuildContext;
@@ -50,28 +56,50 @@ import org.sonatype.plexus.build.incremental.ThreadBuildContext;
  */
 public class Wro4jBuildParticipant extends MojoExecutionBuildParticipant {
 
-  private static final String M2E_WRO4J_WTP_INTEGRATION_KEY = "m2e.wro4j.wtp.integration";
+  private static final String M2E_WRO4J_EXTENSIONS_KEY = "m2e.wro4j.extensions";
 
-  private static final String CONTEXT_FOLDER = "contextFolder";
+  private static final String M2E_WRO4J_INCLUDES_KEY = "m2e.wro4j.includes";
 
-  private static final String TOKEN_SEPARATOR = ",\\s*";
-	
-  private static final Pattern WRO4J_FILES_PATTERN = Pattern.compile("^(\\/?.*\\/)?wro\\.(xml|groovy|properties)$");
-	
-  private static final Pattern WEB_RESOURCES_PATTERN = Pattern.compile("([^\\s]+(\\.(?i)(js|css|scss|sass|less|coffee|json|template))$)");
-  
-  private static final String DESTINATION_FOLDER = "destinationFolder";
-  private static final String CSS_DESTINATION_FOLDER = "cssDestinationFolder";
-  private static final String JS_DESTINATION_FOLDER = "jsDestinationFolder";
-  private static final String GROUP_NAME_MAPPING_FILE = "groupNameMappingFile";
+  private static final String M2E_WRO4J_EXCLUDES_KEY = "m2e.wro4j.excludes";
+
+  private static final String M2E_WRO4J_PARALLEL_GROUPS_KEY = "m2e.wro4j.parallel.groups";
+
+  private static final String M2E_WRO4J_BACKGROUND_DELAY_KEY = "m2e.wro4j.background.delay";
+
+  private static final String M2E_WRO4J_WARM_ENGINE_KEY = "m2e.wro4j.warm.engine";
+
+  private static final String M2E_WRO4J_SHARED_GROUPS_KEY = "m2e.wro4j.shared.groups";
+
+  private static final String M2E_WRO4J_WATCH_INTERVAL_KEY = "m2e.wro4j.watch.interval";
+
+  private static final String M2E_WRO4J_MERGE_GROUPS_KEY = "m2e.wro4j.merge.groups";
+
+  private static final String M2E_WRO4J_OUTPUT_CACHE_KEY = "m2e.wro4j.output.cache";
+
+  private static final String OUTPUT_CACHE_FOLDER = "wro4j-output-cache";
+
+  /**
+   * Parameters telling where wro4j reads and writes files, not how it processes them
+   */
+  private static final Set<String> LOCATION_PARAMETERS = new HashSet<String>(Arrays.asList(
+      ConfigurationCustomizer.CONTEXT_FOLDER, ResolvedConfiguration.DESTINATION_FOLDER,
+      ResolvedConfiguration.JS_DESTINATION_FOLDER, ResolvedConfiguration.CSS_DESTINATION_FOLDER,
+      ResolvedConfiguration.GROUP_NAME_MAPPING_FILE, ResolvedConfiguration.WRO_FILE,
+      ResolvedConfiguration.EXTRA_CONFIG_FILE, ResolvedConfiguration.TARGET_GROUPS));
 
-  private BuildContext currentBuildContext;
+  private ResolvedConfiguration resolvedConfiguration;
+
+  private WarmEngine warmEngine;
+
+  /**
+   * What the previous build looked at, <code>null</code> until a build resolved it
+   */
+  private volatile BuildScope buildScope;
 
   public Wro4jBuildParticipant(MojoExecution execution) {
     super(execution, true);
   }
 
-  @SuppressWarnings("unchecked")
   @Override
   public Set<IProject> build(int kind, IProgressMonitor monitor)
       throws Exception {
@@ -81,256 +109,1240 @@ public class Wro4jBuildParticipant extends MojoExecutionBuildParticipant {
       return null;
     }
 
-    BuildContext originalBuildContext = super.getBuildContext();
-    currentBuildContext = originalBuildContext;
-    Collection<File> sources = getContextRoots(getMavenProjectFacade(), mojoExecution);
-    if (notCleanFullBuild(kind)) {
-    	Collection<String> includedFiles = new ArrayList<String>();
-	    // check if any of the web resource files changed
-	    for (File source : sources){
-	    	// TODO also analyze output classes folders as wro4j can use classpath files
-	    	Scanner ds = currentBuildContext.newScanner(source); // delta or full scanner
-	    	ds.scan();
-	    	includedFiles.addAll(Arrays.asList(ds.getIncludedFiles()));
-	    }
-    	if (isPomModified() || interestingFileChangeDetected(includedFiles, WRO4J_FILES_PATTERN)) {
-    		//treat as new full build as wro4j only checks for classic resources changes during    incremental builds
-    		IProject project = getMavenProjectFacade().getProject();
-			currentBuildContext = new CleanBuildContext(originalBuildContext);
-    	} else if (!interestingFileChangeDetected(includedFiles, WEB_RESOURCES_PATTERN)) {
-    		return null;
-    	}
-    }
-
-    Xpp3Dom originalConfiguration = mojoExecution.getConfiguration();
-
-    Set<IProject> result = null;
+    IProject project = getMavenProjectFacade().getProject();
+    BuildMetrics metrics = new BuildMetrics(project.getName(), kind);
+    if (kind != IncrementalProjectBuilder.AUTO_BUILD
+        || getBackgroundDelay(getMavenProjectFacade().getMavenProject()) <= 0) {
+      takeOverBackgroundBuild(Wro4jProjectState.get(project, mojoExecution.getExecutionId()), mojoExecution);
+    }
     try {
+      // most builds are triggered by changes wro4j doesn't care about, leave before resolving anything
+      long start = System.nanoTime();
+      BuildScope scope = buildScope;
+      if (scope != null && notCleanFullBuild(kind) && !isAffected(scope)
+          && !Wro4jProjectState.get(project, mojoExecution.getExecutionId()).hasInterruptedGroups()) {
+        metrics.count("precheckMicros", (System.nanoTime() - start) / 1000);
+        metrics.endPhase("precheck");
+        metrics.setOutcome("up to date");
+        return getResult(null, scope.getDependencies());
+      }
+      return build(kind, mojoExecution, metrics, monitor);
+    } catch (Exception e) {
+      metrics.setOutcome("error");
+      throw e;
+    } finally {
+      metrics.publish(project);
+    }
+  }
 
-      File destinationFolder = getLocation(mojoExecution, DESTINATION_FOLDER);
-      File jsDestinationFolder = getLocation(mojoExecution, JS_DESTINATION_FOLDER);
-      File cssDestinationFolder = getLocation(mojoExecution, CSS_DESTINATION_FOLDER);
-      File groupNameMappingFile = getLocation(mojoExecution, GROUP_NAME_MAPPING_FILE);
+  private Set<IProject> build(int kind, MojoExecution mojoExecution, BuildMetrics metrics, IProgressMonitor monitor)
+      throws Exception {
 
-      Xpp3Dom customConfiguration = customize(originalConfiguration, 
-    		                                  sources,
-                                              destinationFolder, 
-                                              jsDestinationFolder, 
-                                              cssDestinationFolder,
-                                              groupNameMappingFile);
+    SubMonitor progress = SubMonitor.convert(monitor, NLS.bind("Invoking {0} on {1}",
+        mojoExecution.getMojoDescriptor().getFullGoalName(), getMavenProjectFacade().getProject().getName()), 100);
+    BuildPlan plan = resolve(kind, mojoExecution);
+    metrics.endPhase("resolve");
+    progress.worked(5);
+    try {
+      return runPhases(kind, mojoExecution, plan, metrics, progress);
+    } catch (Exception e) {
+      // the changes were recorded as seen, the groups they affect are left to the next build
+      plan.state.interruptGroups(plan.targetGroups);
+      saveState(plan.state);
+      throw e;
+    }
+  }
 
-      // Add custom configuration
-      mojoExecution.setConfiguration(customConfiguration);
+  /**
+   * Scopes, executes and refreshes the build of the given plan.
+   */
+  private Set<IProject> runPhases(int kind, MojoExecution mojoExecution, BuildPlan plan, BuildMetrics metrics,
+      SubMonitor progress) throws Exception {
+    if (!scopeChanges(plan, metrics)) {
+      return getResult(null, plan.dependencies);
+    }
+    progress.worked(10);
+    if (progress.isCanceled()) {
+      return interrupt(plan.state, plan.targetGroups, metrics, plan.dependencies);
+    }
+    if (!scopeGroups(plan, metrics)) {
+      return getResult(null, plan.dependencies);
+    }
+    metrics.endPhase("model");
+    progress.worked(5);
+    if (progress.isCanceled()) {
+      return interrupt(plan.state, plan.targetGroups, metrics, plan.dependencies);
+    }
 
-      if (monitor != null) {
-    	  String taskName = NLS.bind("Invoking {0} on {1}", getMojoExecution().getMojoDescriptor().getFullGoalName()
-  														, getMavenProjectFacade().getProject().getName());
-    	  monitor.setTaskName(taskName);
+    IProject project = getMavenProjectFacade().getProject();
+    long backgroundDelay = getBackgroundDelay(getMavenProjectFacade().getMavenProject());
+    if (kind == IncrementalProjectBuilder.AUTO_BUILD && backgroundDelay > 0 && plan.model.isIndexable()) {
+      // let the user keep typing, the groups will be built once things calm down
+      BackgroundBuildJob.Request request = new BackgroundBuildJob.Request(getMavenProjectFacade().getMavenProject(),
+          getMavenProjectFacade().getPom(), mojoExecution, plan.customConfiguration, plan.configuration, plan.state,
+          plan.model);
+      BackgroundBuildJob.get(project, mojoExecution.getExecutionId()).submit(request, plan.targetGroups,
+          backgroundDelay);
+      metrics.setOutcome("deferred");
+      return getResult(null, plan.dependencies);
+    }
+    // groups still waiting for the background job are built now, their changes won't show up again
+    Set<String> droppedGroups = BackgroundBuildJob.cancel(getMavenProjectFacade().getPom(),
+        mojoExecution.getExecutionId());
+    if (plan.targetGroups != null && (droppedGroups == null || !droppedGroups.isEmpty())) {
+      if (droppedGroups == null) {
+        plan.targetGroups = null;
+        plan.allOutdatedGroups = true;
+      } else {
+        plan.targetGroups = new TreeSet<String>(plan.targetGroups);
+        plan.targetGroups.addAll(droppedGroups);
       }
-      // execute mojo
-      ThreadBuildContext.setThreadBuildContext(currentBuildContext);
+      // don't let wro4j skip them because their resources have no delta
+      plan.buildContext = new CleanBuildContext(plan.originalBuildContext);
+    }
 
-      result = super.build(kind, monitor);
+    if (plan.targetGroups != null) {
+      ResolvedConfiguration.restrictTargetGroups(plan.customConfiguration, plan.targetGroups);
+    }
 
-      // tell m2e builder to refresh generated resources on original build context
-      refreshWorkspace(mojoExecution, originalBuildContext);
+    try {
+      // execute mojo, keeping track of the files it writes and leaving identical ones untouched
+      SkipUnchangedBuildContext skipUnchangedContext = new SkipUnchangedBuildContext(plan.buildContext);
+      TrackingBuildContext trackingContext = new TrackingBuildContext(skipUnchangedContext);
+      trackExpectedOutputs(trackingContext, plan.configuration, plan.model, plan.targetGroups);
+      ThreadBuildContext.setThreadBuildContext(trackingContext);
+
+      reuseOutputs(plan, trackingContext, metrics, progress.newChild(10));
+      if (progress.isCanceled()) {
+        return interrupt(plan.state, plan.builtGroups, metrics, plan.dependencies);
+      }
+      execute(mojoExecution, plan, trackingContext, metrics, progress.newChild(60));
+      saveState(plan.state);
+      if (plan.builtGroups != null) {
+        metrics.count("groupsProcessed", plan.builtGroups.size());
+      }
+      metrics.count("bytesWritten", skipUnchangedContext.getWrittenBytes());
+      metrics.count("bytesSkipped", skipUnchangedContext.getSkippedBytes());
+      metrics.count("writesSkipped", skipUnchangedContext.getSkippedWrites());
+      metrics.endPhase("record");
+
+      refresh(plan, trackingContext, metrics);
+      if (skipUnchangedContext.getSkippedWrites() > 0) {
+        progress.subTask(NLS.bind("{0} unchanged file(s) left untouched", skipUnchangedContext.getSkippedWrites()));
+      }
 
     } finally {
-      // restore original configuration
-      mojoExecution.setConfiguration(originalConfiguration);
-      ThreadBuildContext.setThreadBuildContext(originalBuildContext);
+      ThreadBuildContext.setThreadBuildContext(plan.originalBuildContext);
     }
 
-    return result;
+    return getResult(null, plan.dependencies);
   }
 
-  private Collection<File> getContextRoots(IMavenProjectFacade facade, MojoExecution mojoExecution)
-      throws CoreException {
-	
-    IMaven maven = MavenPlugin.getMaven();
-    String contextRoots = maven.getMojoParameterValue(getSession(), mojoExecution, CONTEXT_FOLDER, String.class);
-	List<File> locations = new ArrayList<File>();
-    if (contextRoots != null) {
-    	String[] crs = contextRoots.split(TOKEN_SEPARATOR);
-    	IPath root = facade.getProject().getLocation();
-    	for (String cr : crs) {
-    		String location = cr.trim();
-    		if (!location.isEmpty()) {
-    			File l = new File(location);
-	    		if (l.isAbsolute()) {
-	    			locations.add(l);
-	    		} else {
-					locations.add(root.append(location).toFile());
-	    		}
-	    		
-    			
-    		}
-    	}; 
-    }
-    if (locations.isEmpty()) {
-    	locations.add(new File("src/main/webapp"));
-    }
-    return locations;
-  }
-
-
-  private File getLocation(MojoExecution mojoExecution, String parameterName)
-      throws CoreException {
-    IMaven maven = MavenPlugin.getMaven();
-    File location = maven.getMojoParameterValue(getSession(), mojoExecution, parameterName, File.class);
-    return location;
+  /**
+   * Resolves the configuration and the state of the build, and the resources it watches.
+   */
+  private BuildPlan resolve(int kind, MojoExecution mojoExecution) throws CoreException, IOException {
+    Wro4jProjectState state = Wro4jProjectState.get(getMavenProjectFacade().getProject(),
+        mojoExecution.getExecutionId());
+    boolean fullBuild = !notCleanFullBuild(kind);
+    boolean pomModified = !fullBuild && isPomModified();
+    ResolvedConfiguration configuration = getResolvedConfiguration(mojoExecution, fullBuild || pomModified);
+    BuildPlan plan = new BuildPlan(state, configuration, super.getBuildContext(), fullBuild, pomModified);
+    if (fullBuild) {
+      // wro model and resources might have been changed outside of a build
+      state.invalidateModel();
+    }
+    // resources the groups use stay watched, even under excluded folders
+    plan.previousModel = getModel(state, configuration);
+    plan.classifier = getClassifier(getMavenProjectFacade().getMavenProject()).forModel(plan.previousModel);
+    watchExternalFolders(configuration.getContextRoots(), plan.classifier);
+    buildScope = createBuildScope(configuration, plan.classifier);
+    return plan;
   }
 
+  /**
+   * Finds out which resources changed since the previous build, and narrows the groups to build
+   * down to the ones using them.
+   *
+   * @return <code>false</code> if nothing needs to be built
+   */
+  private boolean scopeChanges(BuildPlan plan, BuildMetrics metrics) throws CoreException, IOException {
+    Wro4jProjectState state = plan.state;
+    Collection<File> sources = plan.configuration.getContextRoots();
+    if (plan.fullBuild) {
+      metrics.count("filesScanned", scanResources(state, plan.classifier, sources));
+      metrics.count("filesMatched", state.countGroupResources());
+      plan.checkPreviousResults = true;
+      findContainers(sources, plan.dependencies);
+      metrics.endPhase("scan");
+      metrics.escalate("full build");
+      return true;
+    }
+    // check if any of the web resource files changed
+    Map<String, File> includedFiles = getChangedFiles(plan.configuration, plan.classifier, plan.buildContext,
+        plan.dependencies, metrics);
+    metrics.count("filesScanned", includedFiles.size());
+    metrics.endPhase("scan");
+    // only keep the files whose content actually changed
+    ResourceChanges changes = filterContentChanges(state, plan.classifier, sources, includedFiles);
+    metrics.count("filesMatched", changes.getDescriptors().size() + changes.getWebResources().size());
+    metrics.endPhase("classify");
+    if (plan.pomModified) {
+      //treat as new full build as wro4j only checks for classic resources changes during incremental builds
+      state.invalidateModel();
+      plan.buildContext = new CleanBuildContext(plan.originalBuildContext);
+      metrics.escalate("pom");
+    } else if (changes.hasDescriptorChanges()) {
+      state.invalidateModel();
+      releaseWarmEngine();
+      plan.checkPreviousResults = true;
+      metrics.escalate("descriptors");
+    } else if (!changes.hasWebResourceChanges() && plan.interruptedGroups.isEmpty()) {
+      metrics.setOutcome("up to date");
+      return false;
+    } else {
+      Set<String> targetGroups = changes.hasWebResourceChanges()
+          ? getAffectedGroups(state, plan.configuration, changes.getWebResources().keySet()) : new TreeSet<String>();
+      if (targetGroups != null && !plan.interruptedGroups.isEmpty()) {
+        if (plan.interruptedGroups.contains(Wro4jProjectState.ALL_GROUPS)) {
+          targetGroups = null;
+        } else {
+          targetGroups.addAll(plan.interruptedGroups);
+        }
+        plan.buildContext = new CleanBuildContext(plan.originalBuildContext);
+      }
+      if (targetGroups != null && targetGroups.isEmpty()) {
+        metrics.setOutcome("up to date");
+        return false;
+      }
+      plan.targetGroups = targetGroups;
+    }
+    return true;
+  }
 
-  
-  private boolean interestingFileChangeDetected(Collection<String> includedFiles, Pattern pattern) throws CoreException {
-    if (includedFiles == null || includedFiles.isEmpty()) {
-    	return false;
+  /**
+   * Loads the wro model, and checks the groups to build against the results of the previous builds.
+   *
+   * @return <code>false</code> if nothing needs to be built
+   */
+  private boolean scopeGroups(BuildPlan plan, BuildMetrics metrics) throws IOException {
+    Wro4jProjectState state = plan.state;
+    ResolvedConfiguration configuration = plan.configuration;
+    if (plan.fullBuild || plan.pomModified) {
+      releaseWarmEngine();
+    }
+    WroModel model = getModel(state, configuration);
+    if (model != plan.previousModel) {
+      // the descriptors changed, and maybe the resources to watch with them
+      plan.classifier = getClassifier(getMavenProjectFacade().getMavenProject()).forModel(model);
+      buildScope = createBuildScope(configuration, plan.classifier);
     }
-    for (String file : includedFiles) {
-      String portableFile = file.replace('\\', '/');
-      Matcher m = pattern.matcher(portableFile);
-      if (m.matches()) {
-    	  return true;
+    plan.model = model;
+    if (model.isIndexable()) {
+      long modelKey = computeModelKey(model, configuration, plan.customConfiguration);
+      plan.engineKey = Long.valueOf(modelKey);
+      if (plan.checkPreviousResults && state.isModelKey(modelKey)) {
+        // Same groups, same processing : only rebuild what changed since the previous build
+        plan.fingerprints = state.computeFingerprints(null);
+        plan.targetGroups = configuration.retainConfiguredGroups(state.getOutdatedGroups(plan.fingerprints));
+        plan.allOutdatedGroups = true;
+        if (plan.targetGroups.isEmpty()) {
+          state.clearInterruptedGroups(null);
+          metrics.setOutcome("up to date");
+          return false;
+        }
+        // don't let wro4j skip groups on its own because their resources have no delta
+        plan.buildContext = new CleanBuildContext(plan.originalBuildContext);
+      } else if (!state.isModelKey(modelKey)) {
+        // Previous results were produced with other descriptors or another configuration
+        state.resetBuildResults(modelKey);
+        plan.targetGroups = null;
+        plan.buildContext = new CleanBuildContext(plan.originalBuildContext);
+        metrics.escalate("configuration");
+      }
+    } else {
+      state.forgetGroups(null);
+      if (plan.checkPreviousResults) {
+        plan.buildContext = new CleanBuildContext(plan.originalBuildContext);
+        metrics.escalate("unindexable model");
       }
     }
+    plan.allOutdatedGroups |= plan.targetGroups == null;
+    return true;
+  }
 
-    return false;
+  /**
+   * Copies the groups already built by projects sharing the same resources, or already built with
+   * the same resources before, and merges the groups needing no processing, leaving the other ones
+   * to the mojo.
+   */
+  private void reuseOutputs(BuildPlan plan, TrackingBuildContext trackingContext, BuildMetrics metrics,
+      SubMonitor progress) throws IOException, CoreException {
+    ResolvedConfiguration configuration = plan.configuration;
+    progress.setWorkRemaining(3);
+    if (plan.model.isIndexable()) {
+      plan.builtGroups = plan.targetGroups == null ? configuration.getBuildableGroups(plan.model) : plan.targetGroups;
+    }
+    plan.mojoGroups = plan.builtGroups;
+    plan.sharingGroups = isSharingGroups(configuration);
+    plan.outputCache = getOutputCache(configuration);
+    if (plan.builtGroups != null && (plan.sharingGroups || plan.outputCache != null)) {
+      if (plan.fingerprints == null) {
+        plan.fingerprints = plan.state.computeFingerprints(plan.builtGroups);
+      }
+      plan.sharedKeys = computeSharedKeys(plan.model, configuration, plan.customConfiguration, plan.builtGroups,
+          plan.fingerprints);
+    }
+    if (plan.builtGroups != null && plan.sharingGroups) {
+      plan.mojoGroups = copySharedOutputs(configuration, plan.sharedKeys, plan.builtGroups, trackingContext,
+          progress.newChild(1));
+      metrics.count("groupsShared", plan.builtGroups.size() - plan.mojoGroups.size());
+      metrics.endPhase("share");
+    }
+    if (plan.mojoGroups != null && plan.outputCache != null) {
+      int remainingGroups = plan.mojoGroups.size();
+      plan.mojoGroups = restoreCachedOutputs(plan.outputCache, configuration, plan.sharedKeys, plan.mojoGroups,
+          trackingContext, progress.newChild(1));
+      metrics.count("groupsCached", remainingGroups - plan.mojoGroups.size());
+      metrics.endPhase("cache");
+    }
+    if (plan.mojoGroups != null && configuration.getGroupNameMappingFile() == null) {
+      plan.mojoGroups = streamMergeOnlyGroups(configuration, plan.model, plan.mojoGroups, metrics,
+          progress.newChild(1));
+    }
   }
 
-    
-  private boolean isPomModified() {
-    IMavenProjectFacade facade = getMavenProjectFacade();
-    IResourceDelta delta = getDelta(facade.getProject());
-    if (delta == null) {
-      return false;
+  /**
+   * Runs the mojo on the groups left to build, and records the results.
+   */
+  private void execute(MojoExecution mojoExecution, BuildPlan plan, TrackingBuildContext trackingContext,
+      BuildMetrics metrics, SubMonitor progress) throws CoreException, IOException, InterruptedException {
+    Wro4jProjectState state = plan.state;
+    ResolvedConfiguration configuration = plan.configuration;
+    if (plan.mojoGroups != null && plan.mojoGroups.size() < plan.builtGroups.size()) {
+      ResolvedConfiguration.restrictTargetGroups(plan.customConfiguration, plan.mojoGroups);
     }
+    List<List<String>> partitions = getPartitions(configuration, plan.mojoGroups);
+    if (plan.mojoGroups != null && plan.mojoGroups.isEmpty()) {
+      // nothing left for wro4j
+      recordBuild(state, configuration, plan.builtGroups, plan.fingerprints);
+      state.clearInterruptedGroups(plan.allOutdatedGroups ? null : plan.builtGroups);
+      metrics.setOutcome("built");
+    } else if (partitions.size() > 1) {
+      Set<String> unbuiltGroups = executeConcurrently(mojoExecution, plan.customConfiguration, partitions,
+          trackingContext, plan.originalBuildContext, progress);
+      state.interruptGroups(unbuiltGroups);
+      plan.builtGroups = new TreeSet<String>(plan.builtGroups);
+      plan.builtGroups.removeAll(unbuiltGroups);
+      metrics.endPhase("mojo");
+      recordBuild(state, configuration, plan.builtGroups, plan.fingerprints);
+      state.clearInterruptedGroups(plan.allOutdatedGroups && unbuiltGroups.isEmpty() ? null : plan.builtGroups);
+      plan.mojoGroups = new TreeSet<String>(plan.mojoGroups);
+      plan.mojoGroups.removeAll(unbuiltGroups);
+      registerSharedOutputs(configuration, plan.sharedKeys, plan.mojoGroups, plan.sharingGroups, plan.outputCache);
+      metrics.setOutcome(unbuiltGroups.isEmpty() ? "built" : progress.isCanceled() ? "canceled" : "failed");
+    } else {
+      executeSingle(mojoExecution, plan, metrics, progress);
+    }
+  }
 
-    if (delta.findMember(facade.getPom().getProjectRelativePath()) != null) {
-      return true;
+  /**
+   * Runs the mojo on the build thread, on a warm engine if possible.
+   */
+  private void executeSingle(MojoExecution mojoExecution, BuildPlan plan, BuildMetrics metrics, SubMonitor progress)
+      throws CoreException, IOException {
+    Wro4jProjectState state = plan.state;
+    int previousErrors = getSession().getResult().getExceptions().size();
+
+    boolean canceled = false;
+    Collection<String> warmGroups = executeWarm(mojoExecution, plan.customConfiguration, plan.engineKey,
+        plan.mojoGroups, plan.configuration, progress);
+    if (warmGroups == null) {
+      // the execution shared with m2e is left untouched, wro4j runs a copy using the custom configuration
+      MojoExecution execution = ResolvedConfiguration.newExecution(mojoExecution, plan.customConfiguration);
+      MavenPlugin.getMaven().execute(getSession(), execution, progress);
+    } else if (warmGroups.size() < plan.mojoGroups.size()) {
+      // canceled in between groups, the next build takes over
+      Set<String> remainingGroups = new TreeSet<String>(plan.mojoGroups);
+      remainingGroups.removeAll(warmGroups);
+      state.interruptGroups(remainingGroups);
+      plan.builtGroups = new TreeSet<String>(plan.builtGroups);
+      plan.builtGroups.removeAll(remainingGroups);
+      plan.mojoGroups = warmGroups;
+      canceled = true;
+    }
+    metrics.endPhase("mojo");
+
+    if (getSession().getResult().getExceptions().size() > previousErrors) {
+      // their changes were recorded as seen, make sure the next build gets to them
+      state.interruptGroups(plan.targetGroups);
+      metrics.setOutcome("failed");
+    } else {
+      if (plan.builtGroups != null) {
+        recordBuild(state, plan.configuration, plan.builtGroups, plan.fingerprints);
+        registerSharedOutputs(plan.configuration, plan.sharedKeys, plan.mojoGroups, plan.sharingGroups,
+            plan.outputCache);
+      }
+      state.clearInterruptedGroups(plan.allOutdatedGroups && !canceled ? null : plan.builtGroups);
+      metrics.setOutcome(canceled ? "canceled" : "built");
+    }
+  }
+
+  /**
+   * Tells the m2e builder to refresh the generated resources, on the original build context.
+   */
+  private void refresh(BuildPlan plan, TrackingBuildContext trackingContext, BuildMetrics metrics) {
+    metrics.count("filesRefreshed", refreshWorkspace(plan.configuration, trackingContext, plan.originalBuildContext));
+    metrics.endPhase("refresh");
+  }
+
+  /**
+   * Drops the pending background run of the execution, if any, this build being run in the
+   * foreground. Its changes were already recorded as seen, so its groups are left to this build
+   * as if a build had been canceled before getting to them, whatever the deltas.
+   */
+  private void takeOverBackgroundBuild(Wro4jProjectState state, MojoExecution mojoExecution) {
+    Set<String> droppedGroups = BackgroundBuildJob.cancel(getMavenProjectFacade().getPom(),
+        mojoExecution.getExecutionId());
+    if (droppedGroups == null || !droppedGroups.isEmpty()) {
+      state.interruptGroups(droppedGroups);
+      saveState(state);
+    }
+  }
+
+  /**
+   * @return <code>true</code> if the resource deltas of the projects of the given scope might hold
+   *         relevant changes, or if some of its context folders have pending changes outside of
+   *         the workspace
+   */
+  private boolean isAffected(BuildScope scope) {
+    if (scope.hasExternalFolders()) {
+      ExternalFolderWatcher watcher = ExternalFolderWatcher.find(getMavenProjectFacade().getProject());
+      if (watcher == null || watcher.hasPendingChanges()) {
+        return true;
+      }
+    }
+    for (IProject project : scope.getProjects()) {
+      if (scope.isAffectedBy(project, getDelta(project))) {
+        return true;
+      }
     }
     return false;
   }
 
-  private void refreshWorkspace(MojoExecution mojoExecution,
-      BuildContext buildContext) throws CoreException {
-    refreshResource(mojoExecution, buildContext, DESTINATION_FOLDER);
-    refreshResource(mojoExecution, buildContext, CSS_DESTINATION_FOLDER);
-    refreshResource(mojoExecution, buildContext, JS_DESTINATION_FOLDER);
-    refreshResource(mojoExecution, buildContext, GROUP_NAME_MAPPING_FILE);
+  /**
+   * Leaves a canceled build, the groups it was about to build being built by the next one. Files
+   * generated so far are left as they are.
+   *
+   * @param groups the groups the build was about to build, <code>null</code> if not known
+   */
+  private Set<IProject> interrupt(Wro4jProjectState state, Collection<String> groups, BuildMetrics metrics,
+      Set<IProject> dependencies) {
+    state.interruptGroups(groups);
+    saveState(state);
+    metrics.setOutcome("canceled");
+    return getResult(null, dependencies);
   }
 
-  private void refreshResource(MojoExecution mojoExecution,
-      BuildContext buildContext, String parameterName) throws CoreException {
-    File location = getLocation(mojoExecution, parameterName);
-    if (location != null && location.exists()) {
-      buildContext.refresh(location);
+  private BuildScope createBuildScope(ResolvedConfiguration configuration, ResourceClassifier classifier) {
+    Collection<File> sources = configuration.getContextRoots();
+    BuildScope scope = new BuildScope(getMavenProjectFacade().getPom(), classifier);
+    Map<File, IContainer> containers = findContainers(sources, new HashSet<IProject>());
+    for (File source : sources) {
+      IContainer container = containers.get(source);
+      if (container != null) {
+        scope.addRoot(container, "");
+      }
+    }
+    scope.setExternalFolders(containers.size() < sources.size());
+    IContainer outputFolder = getOutputFolder();
+    if (outputFolder != null) {
+      scope.addRoot(outputFolder, WroModel.CLASSPATH_PREFIX + "/");
+    }
+    for (IPath outputPath : getOutputPaths(configuration)) {
+      scope.addOutput(outputPath);
     }
+    return scope;
   }
 
-  private Xpp3Dom customize(Xpp3Dom originalConfiguration, Collection<File> contextFolders,
-      File originalDestinationFolder, File originalJsDestinationFolder,
-      File originalCssDestinationFolder, File originalGroupNameMappingFile) throws IOException, CoreException {
-    IMavenProjectFacade facade = getMavenProjectFacade();
-    if (!"war".equals(facade.getPackaging())) {
-      // Not a war project, we don't know how to customize that
-      return originalConfiguration;
+  /**
+   * @return <code>true</code> if groups can be shared with other projects, as enabled with the
+   *         <code>m2e.wro4j.shared.groups</code> pom property
+   */
+  private boolean isSharingGroups(ResolvedConfiguration configuration) {
+    MavenProject mavenProject = getMavenProjectFacade().getMavenProject();
+    // a group name mapping file must be written by the mojo, whatever the groups
+    return mavenProject != null && configuration.getGroupNameMappingFile() == null
+        && Boolean.parseBoolean(mavenProject.getProperties().getProperty(M2E_WRO4J_SHARED_GROUPS_KEY));
+  }
+
+  /**
+   * @return the key of each group in the registry of shared outputs
+   */
+  private Map<String, Long> computeSharedKeys(WroModel model, ResolvedConfiguration configuration,
+      Xpp3Dom customConfiguration, Collection<String> groups, Map<String, Long> fingerprints) throws IOException {
+    Crc64 crc = new Crc64();
+    crc.update(String.valueOf(getMojoExecution().getVersion()));
+    updateExtraConfiguration(crc, configuration);
+    // where groups are read from and written to doesn't change their content
+    Xpp3Dom processingConfiguration = new Xpp3Dom(customConfiguration);
+    for (int i = processingConfiguration.getChildCount() - 1; i >= 0; i--) {
+      if (LOCATION_PARAMETERS.contains(processingConfiguration.getChild(i).getName())) {
+        processingConfiguration.removeChild(i);
+      }
     }
-    Xpp3Dom customConfiguration = new Xpp3Dom("configuration");
-    Xpp3DomUtils.mergeXpp3Dom(customConfiguration, originalConfiguration);
+    crc.update(processingConfiguration.toString());
+    long processingKey = crc.getValue();
+    Map<String, Long> keys = new HashMap<String, Long>();
+    for (String group : groups) {
+      String signature = model.getGroupSignature(group);
+      Long fingerprint = fingerprints.get(group);
+      if (signature != null && fingerprint != null) {
+        keys.put(group, Long.valueOf(SharedGroupOutputs.computeKey(processingKey, signature, fingerprint.longValue())));
+      }
+    }
+    return keys;
+  }
 
-    IProject project = facade.getProject();
-    String target = facade.getMavenProject().getBuild().getDirectory();
-    IPath relativeTargetPath = MavenProjectUtils.getProjectRelativePath(project, target);
-    if (relativeTargetPath == null) {
-      // target folder not under the project directory, we bail
-      return customConfiguration;
+  /**
+   * Copies the outputs of the groups already built by other projects.
+   *
+   * @return the groups which still need to be built
+   */
+  private Collection<String> copySharedOutputs(ResolvedConfiguration configuration, Map<String, Long> sharedKeys,
+      Collection<String> groups, BuildContext buildContext, IProgressMonitor monitor) {
+    SubMonitor progress = SubMonitor.convert(monitor, sharedKeys.size());
+    Set<String> remainingGroups = new TreeSet<String>(groups);
+    Map<String, Collection<File>> expectedOutputs = configuration.getExpectedOutputs(groups);
+    for (Map.Entry<String, Long> key : sharedKeys.entrySet()) {
+      if (progress.isCanceled()) {
+        break;
+      }
+      progress.worked(1);
+      try {
+        if (SharedGroupOutputs.copy(key.getValue().longValue(), expectedOutputs.get(key.getKey()), buildContext)) {
+          remainingGroups.remove(key.getKey());
+        }
+      } catch (IOException e) {
+        // let wro4j build it
+      }
     }
+    return remainingGroups;
+  }
 
-    IFolder m2eWtpFolder = project.getFolder(relativeTargetPath.append("m2e-wtp"));
-     
-    if (!m2eWtpFolder.exists() || isWtpIntegrationDisabled(facade.getMavenProject(new NullProgressMonitor()))) {
-      // Not a m2e-wtp project, we don't know how to customize either
-      // TODO Try to support Sonatype's webby instead?
-      return customConfiguration;
+  /**
+   * @return the cache of processed groups, as enabled with the <code>m2e.wro4j.output.cache</code>
+   *         pom property giving its maximum size in megabytes, or <code>null</code>
+   */
+  private OutputCache getOutputCache(ResolvedConfiguration configuration) {
+    long maxSize = getLongProperty(getMavenProjectFacade().getMavenProject(), M2E_WRO4J_OUTPUT_CACHE_KEY);
+    if (maxSize <= 0 || configuration.getGroupNameMappingFile() != null) {
+      return null;
     }
-    IFolder webResourcesFolder = m2eWtpFolder.getFolder("web-resources");
+    IPath location = getMavenProjectFacade().getProject().getWorkingLocation(Wro4jProjectState.PLUGIN_ID);
+    return new OutputCache(location.append(OUTPUT_CACHE_FOLDER).toFile(), maxSize * 1024 * 1024);
+  }
 
-    IPath fullTargetPath = new Path(target);
-    IPath defaultOutputPathPrefix = fullTargetPath.append(facade.getMavenProject().getBuild().getFinalName());
+  /**
+   * Copies the cached outputs of the groups whose resources and configuration were already built.
+   *
+   * @return the groups which still need to be built
+   */
+  private Collection<String> restoreCachedOutputs(OutputCache outputCache, ResolvedConfiguration configuration,
+      Map<String, Long> keys, Collection<String> groups, BuildContext buildContext, IProgressMonitor monitor) {
+    SubMonitor progress = SubMonitor.convert(monitor, groups.size());
+    Set<String> remainingGroups = new TreeSet<String>(groups);
+    Map<String, Collection<File>> expectedOutputs = configuration.getExpectedOutputs(groups);
+    for (String group : groups) {
+      if (progress.isCanceled()) {
+        break;
+      }
+      progress.worked(1);
+      Long key = keys.get(group);
+      try {
+        if (key != null && outputCache.restore(key.longValue(), expectedOutputs.get(group), buildContext)) {
+          remainingGroups.remove(group);
+        }
+      } catch (IOException e) {
+        // let wro4j build it
+      }
+    }
+    return remainingGroups;
+  }
+
+  /**
+   * Concatenates the groups declared as only needing their resources to be merged, in the
+   * <code>m2e.wro4j.merge.groups</code> pom property, as a comma separated list of groups or
+   * <code>*</code> for all of them.
+   *
+   * @return the groups which still need to be built by wro4j
+   */
+  private Collection<String> streamMergeOnlyGroups(ResolvedConfiguration configuration, WroModel model,
+      Collection<String> groups, BuildMetrics metrics, IProgressMonitor monitor) {
+    MavenProject mavenProject = getMavenProjectFacade().getMavenProject();
+    String value = mavenProject == null ? null : mavenProject.getProperties().getProperty(M2E_WRO4J_MERGE_GROUPS_KEY);
+    if (value == null || value.trim().length() == 0) {
+      return groups;
+    }
+    Set<String> mergeOnlyGroups = new HashSet<String>(Arrays.asList(value.trim().split(ConfigurationCustomizer.TOKEN_SEPARATOR)));
+    IContainer outputFolder = getOutputFolder();
+    File classpathRoot = outputFolder == null || outputFolder.getLocation() == null ? null
+        : outputFolder.getLocation().toFile();
+    StreamingGroupMerger merger = new StreamingGroupMerger(configuration.getContextRoots(), classpathRoot);
+    Map<String, Collection<File>> outputs = configuration.getExpectedOutputs(groups);
+    Set<String> remainingGroups = new TreeSet<String>(groups);
+    SubMonitor progress = SubMonitor.convert(monitor, groups.size());
+    for (String group : groups) {
+      if (progress.isCanceled()) {
+        break;
+      }
+      progress.worked(1);
+      WroModel.Group definition = model.getGroup(group);
+      if (definition == null || !(mergeOnlyGroups.contains("*") || mergeOnlyGroups.contains(group))) {
+        continue;
+      }
+      try {
+        if (merger.merge(definition, outputs.get(group))) {
+          remainingGroups.remove(group);
+        }
+      } catch (IOException e) {
+        // let wro4j build it
+      }
+    }
+    metrics.count("groupsStreamed", groups.size() - remainingGroups.size());
+    metrics.count("writesSkipped", merger.getSkippedWrites());
+    metrics.endPhase("stream");
+    return remainingGroups;
+  }
+
+  /**
+   * Makes the outputs of the groups built by wro4j available to other projects and later builds.
+   */
+  private void registerSharedOutputs(ResolvedConfiguration configuration, Map<String, Long> sharedKeys,
+      Collection<String> groups, boolean sharingGroups, OutputCache outputCache) {
+    if (sharedKeys == null) {
+      return;
+    }
+    for (Map.Entry<String, Collection<File>> outputs : configuration.getGroupOutputs(groups).entrySet()) {
+      Long key = sharedKeys.get(outputs.getKey());
+      if (key == null) {
+        continue;
+      }
+      if (sharingGroups) {
+        SharedGroupOutputs.register(key.longValue(), outputs.getValue());
+      }
+      if (outputCache != null) {
+        try {
+          outputCache.store(key.longValue(), outputs.getValue());
+        } catch (IOException e) {
+          // only a cache
+        }
+      }
+    }
+  }
+
+  private void recordBuild(Wro4jProjectState state, ResolvedConfiguration configuration, Collection<String> builtGroups,
+      Map<String, Long> fingerprints) {
+    if (fingerprints == null) {
+      fingerprints = state.computeFingerprints(builtGroups);
+    }
+    state.recordBuild(builtGroups, fingerprints, configuration.getGroupOutputs(builtGroups));
+  }
 
-    fixContextFolders(customConfiguration, contextFolders);
+  /**
+   * @return the partitions of groups to build concurrently, or a single partition if they must be
+   *         built in one go
+   */
+  private List<List<String>> getPartitions(ResolvedConfiguration configuration, Collection<String> groups) {
+    int parallelism = getParallelism(getMavenProjectFacade().getMavenProject());
+    if (parallelism < 2 || groups == null || groups.size() < 2 || configuration.getGroupNameMappingFile() != null) {
+      // all groups share the same mapping file
+      return Collections.singletonList(groups == null ? Collections.<String> emptyList() : new ArrayList<String>(groups));
+    }
+    return ParallelGroupExecutor.partition(groups, parallelism);
+  }
 
-    customizeLocation(originalDestinationFolder, webResourcesFolder,
-        defaultOutputPathPrefix, customConfiguration, DESTINATION_FOLDER);
+  /**
+   * Builds each partition of groups concurrently, reporting failures on the pom.
+   *
+   * @return the groups of the partitions which failed or were canceled before they were done
+   */
+  private Set<String> executeConcurrently(MojoExecution mojoExecution, Xpp3Dom configuration,
+      List<List<String>> partitions, BuildContext mojoBuildContext, BuildContext buildContext,
+      IProgressMonitor monitor) throws InterruptedException {
+    ParallelGroupExecutor executor = new ParallelGroupExecutor(getSession(), mojoExecution, mojoBuildContext);
+    List<List<Throwable>> errors = executor.execute(configuration, partitions, monitor);
+    File pom = getMavenProjectFacade().getPom().getLocation().toFile();
+    Set<String> unbuiltGroups = new TreeSet<String>();
+    for (int i = 0; i < partitions.size(); i++) {
+      if (errors.get(i) == null) {
+        // canceled, the next build takes over
+        unbuiltGroups.addAll(partitions.get(i));
+        continue;
+      }
+      if (errors.get(i).isEmpty()) {
+        continue;
+      }
+      unbuiltGroups.addAll(partitions.get(i));
+      for (Throwable error : errors.get(i)) {
+        String message = NLS.bind("Failed to build wro4j groups {0} : {1}", partitions.get(i), error.getMessage());
+        buildContext.addMessage(pom, 0, 0, message, BuildContext.SEVERITY_ERROR, error);
+      }
+    }
+    return unbuiltGroups;
+  }
 
-    customizeLocation(originalJsDestinationFolder, webResourcesFolder,
-        defaultOutputPathPrefix, customConfiguration, JS_DESTINATION_FOLDER);
+  /**
+   * @return the number of group partitions to build concurrently, set with the
+   *         <code>m2e.wro4j.parallel.groups</code> pom property, either a number or
+   *         <code>true</code> to use all the available processors.
+   */
+  static int getParallelism(MavenProject mavenProject) {
+    String value = mavenProject == null ? null : mavenProject.getProperties().getProperty(M2E_WRO4J_PARALLEL_GROUPS_KEY);
+    if (value == null) {
+      return 1;
+    }
+    if (Boolean.parseBoolean(value.trim())) {
+      return Runtime.getRuntime().availableProcessors();
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      return 1;
+    }
+  }
 
-    customizeLocation(originalCssDestinationFolder, webResourcesFolder,
-        defaultOutputPathPrefix, customConfiguration, CSS_DESTINATION_FOLDER);
+  /**
+   * Builds the groups on the warm engine, if enabled with the <code>m2e.wro4j.warm.engine</code>
+   * pom property, creating it if needed.
+   *
+   * @param engineKey identifies the descriptors and configuration, <code>null</code> if unknown
+   * @return the groups built, fewer than the given ones if the build was canceled in between, or
+   *         <code>null</code> if the mojo must be executed the usual way
+   */
+  private Collection<String> executeWarm(MojoExecution mojoExecution, Xpp3Dom configuration, Long engineKey,
+      Collection<String> groups, ResolvedConfiguration resolvedConfiguration, SubMonitor progress)
+      throws CoreException {
+    MavenProject mavenProject = getMavenProjectFacade().getMavenProject();
+    if (engineKey == null || groups == null || mavenProject == null
+        || !Boolean.parseBoolean(mavenProject.getProperties().getProperty(M2E_WRO4J_WARM_ENGINE_KEY))) {
+      releaseWarmEngine();
+      return null;
+    }
+    if (warmEngine != null && !warmEngine.isFor(engineKey.longValue())) {
+      releaseWarmEngine();
+    }
+    if (warmEngine == null) {
+      warmEngine = WarmEngine.create(getSession(), mojoExecution, configuration, engineKey.longValue());
+      if (warmEngine == null) {
+        return null;
+      }
+    }
+    if (resolvedConfiguration.getGroupNameMappingFile() != null) {
+      // the mapping file only lists the groups of each run
+      if (!warmEngine.execute(getSession(), groups)) {
+        releaseWarmEngine();
+        return null;
+      }
+      return groups;
+    }
+    // processors are already set up, so groups are built one at a time, a canceled build stops early
+    progress.setWorkRemaining(groups.size());
+    List<String> builtGroups = new ArrayList<String>(groups.size());
+    for (String group : groups) {
+      if (progress.isCanceled()) {
+        break;
+      }
+      progress.subTask(NLS.bind("Building wro4j group {0}", group));
+      if (!warmEngine.execute(getSession(), Collections.singleton(group))) {
+        releaseWarmEngine();
+        return null;
+      }
+      builtGroups.add(group);
+      progress.worked(1);
+    }
+    return builtGroups;
+  }
 
-    customizeLocation(originalGroupNameMappingFile, webResourcesFolder,
-            defaultOutputPathPrefix, customConfiguration, GROUP_NAME_MAPPING_FILE);
+  private void releaseWarmEngine() {
+    if (warmEngine != null) {
+      warmEngine.release();
+      warmEngine = null;
+    }
+  }
 
-    return customConfiguration;
+  /**
+   * @return the quiet period, in milliseconds, after which autobuilds are processed in the
+   *         background, set with the <code>m2e.wro4j.background.delay</code> pom property, or 0 if
+   *         autobuilds are processed synchronously
+   */
+  private long getBackgroundDelay(MavenProject mavenProject) {
+    return getLongProperty(mavenProject, M2E_WRO4J_BACKGROUND_DELAY_KEY);
   }
 
-  private boolean isWtpIntegrationDisabled(MavenProject mavenProject) {
-	Properties properties = mavenProject.getProperties();
-	String isWtpIntegrationProperty = properties.getProperty(M2E_WRO4J_WTP_INTEGRATION_KEY, Boolean.TRUE.toString());
-	return !Boolean.parseBoolean(isWtpIntegrationProperty);
+  /**
+   * @return the positive value of a pom property, or 0 if it's not set or invalid
+   */
+  private static long getLongProperty(MavenProject mavenProject, String key) {
+    String value = mavenProject == null ? null : mavenProject.getProperties().getProperty(key);
+    if (value == null) {
+      return 0;
+    }
+    try {
+      return Math.max(0, Long.parseLong(value.trim()));
+    } catch (NumberFormatException e) {
+      return 0;
+    }
   }
 
-  private void customizeLocation(File originalDestinationFolder,
-      IFolder webResourcesFolder, IPath defaultOutputPathPrefix,
-      Xpp3Dom configuration, String parameterName) throws IOException {
+  private Set<IProject> getResult(Set<IProject> result, Set<IProject> dependencies) {
+    if (dependencies.isEmpty()) {
+      return result;
+    }
+    if (result != null) {
+      dependencies.addAll(result);
+    }
+    return dependencies;
+  }
 
-    if (originalDestinationFolder != null) {
-      IPath customPath = getReplacementPath(originalDestinationFolder, webResourcesFolder, defaultOutputPathPrefix);
-      if (customPath != null) {
-        Xpp3Dom dom = configuration.getChild(parameterName);
-        if (dom == null) {
-          dom = new Xpp3Dom(parameterName);
-          configuration.addChild(dom);
+  /**
+   * Collects the files added, changed or removed under the context folders and the output classes
+   * folder since the previous build, from the resource deltas when available. Folders outside of
+   * the workspace come from their watcher, if any. Other folders are handed to the build context
+   * scanner.
+   *
+   * @param dependencies receives the other projects holding context folders
+   * @return the changed files, indexed by their path relative to their context folder
+   */
+  private Map<String, File> getChangedFiles(ResolvedConfiguration configuration, ResourceClassifier classifier,
+      BuildContext buildContext, Set<IProject> dependencies, BuildMetrics metrics) {
+    Collection<File> sources = configuration.getContextRoots();
+    List<IPath> outputPaths = getOutputPaths(configuration);
+    Map<String, File> changedFiles = new LinkedHashMap<String, File>();
+    IProject project = getMavenProjectFacade().getProject();
+    Map<IProject, ResourceDeltaCollector> collectors = new LinkedHashMap<IProject, ResourceDeltaCollector>();
+    List<File> scannedSources = new ArrayList<File>();
+    Map<File, IContainer> containers = findContainers(sources, dependencies);
+    for (File source : sources) {
+      IContainer container = containers.get(source);
+      ResourceDeltaCollector collector = container == null ? null : getCollector(collectors, container.getProject(),
+          changedFiles, classifier);
+      if (collector == null) {
+        scannedSources.add(source);
+      } else {
+        collector.addRoot(container, "");
+      }
+    }
+    // wro4j can also use classpath resources
+    IContainer outputFolder = getOutputFolder();
+    ResourceDeltaCollector collector = getCollector(collectors, project, changedFiles, classifier);
+    if (outputFolder != null && collector != null) {
+      collector.addRoot(outputFolder, WroModel.CLASSPATH_PREFIX + "/");
+    }
+    for (Map.Entry<IProject, ResourceDeltaCollector> entry : collectors.entrySet()) {
+      if (entry.getValue() != null && entry.getValue().hasRoots()) {
+        for (IPath outputPath : outputPaths) {
+          entry.getValue().addOutput(outputPath);
         }
-        dom.setValue(customPath.toOSString());
-      }
-    }
-  }
-
-  private void fixContextFolders(Xpp3Dom configuration, Collection<File> contextFolders) throws IOException {
-	    if (contextFolders == null || contextFolders.isEmpty()) {
-	    	return;
-	    }
-	    StringBuilder customContextFolders = new StringBuilder();
-	    boolean addComma = false;
-	    for(File folder : contextFolders) {
-	    	if (addComma) {
-	    		customContextFolders.append(", ");
-	    	}
-	    	customContextFolders.append(folder.getAbsolutePath().replace('\\', '/'));
-	    	addComma = true;
-	    }
-	    Xpp3Dom dom = configuration.getChild(CONTEXT_FOLDER);
-	    if (dom == null) {
-	       dom = new Xpp3Dom(CONTEXT_FOLDER);
-	       configuration.addChild(dom);
-	    }
-	    dom.setValue(customContextFolders.toString());
-	  }
-  
-  private IPath getReplacementPath(File originalFolder, IFolder webResourcesFolder, IPath defaultOutputPathPrefix)
-      throws IOException {
-    IPath originalDestinationFolderPath = Path.fromOSString(originalFolder.getCanonicalPath());
-    
-    if (!defaultOutputPathPrefix.isPrefixOf(originalDestinationFolderPath)) {
+        try {
+          getDelta(entry.getKey()).accept(entry.getValue());
+        } catch (CoreException e) {
+          // Can't walk the delta, consider everything changed
+          scannedSources.addAll(sources);
+          break;
+        }
+      }
+    }
+    ExternalFolderWatcher watcher = ExternalFolderWatcher.find(project);
+    for (File source : scannedSources) {
+      Map<String, File> watchedChanges = watcher == null ? null : watcher.takeChanges(source);
+      if (watchedChanges != null) {
+        metrics.count("watchedChanges", watchedChanges.size());
+        for (Map.Entry<String, File> file : watchedChanges.entrySet()) {
+          if (!changedFiles.containsKey(file.getKey())) {
+            changedFiles.put(file.getKey(), file.getValue());
+          }
+        }
+        continue;
+      }
+      List<String> outputPrefixes = getOutputPrefixes(source, configuration.getOutputLocations());
+      Scanner ds = buildContext.newScanner(source); // delta or full scanner
+      ds.scan();
+      for (String file : ds.getIncludedFiles()) {
+        if (!changedFiles.containsKey(file) && !isOutput(file, outputPrefixes)) {
+          changedFiles.put(file, new File(source, file));
+        }
+      }
+    }
+    return changedFiles;
+  }
+
+  /**
+   * @return the workspace paths of the folders and files wro4j writes to, whose changes come from
+   *         the build itself
+   */
+  private List<IPath> getOutputPaths(ResolvedConfiguration configuration) {
+    List<IPath> outputPaths = new ArrayList<IPath>();
+    IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+    for (File location : configuration.getOutputLocations()) {
+      IContainer container = root.getContainerForLocation(Path.fromOSString(location.getAbsolutePath()));
+      if (container != null) {
+        outputPaths.add(container.getFullPath());
+      }
+    }
+    return outputPaths;
+  }
+
+  /**
+   * @return the paths, relative to the given context folder, of the outputs lying strictly within it
+   */
+  private static List<String> getOutputPrefixes(File source, Collection<File> outputLocations) {
+    List<String> prefixes = new ArrayList<String>();
+    IPath sourcePath = Path.fromOSString(source.getAbsolutePath());
+    for (File location : outputLocations) {
+      IPath outputPath = Path.fromOSString(location.getAbsolutePath());
+      if (sourcePath.isPrefixOf(outputPath) && outputPath.segmentCount() > sourcePath.segmentCount()) {
+        prefixes.add(outputPath.makeRelativeTo(sourcePath).toString());
+      }
+    }
+    return prefixes;
+  }
+
+  private static boolean isOutput(String file, List<String> outputPrefixes) {
+    String path = file.replace('\\', '/');
+    for (String prefix : outputPrefixes) {
+      if (path.equals(prefix) || path.startsWith(prefix + "/")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return a delta collector for the given project, or <code>null</code> if it has no delta
+   */
+  private ResourceDeltaCollector getCollector(Map<IProject, ResourceDeltaCollector> collectors, IProject project,
+      Map<String, File> changedFiles, ResourceClassifier classifier) {
+    if (!collectors.containsKey(project)) {
+      collectors.put(project, getDelta(project) == null ? null : new ResourceDeltaCollector(changedFiles, classifier));
+    }
+    return collectors.get(project);
+  }
+
+  /**
+   * @param dependencies receives the other projects holding context folders
+   * @return the workspace folders matching the context folders, folders outside of the workspace
+   *         are left out
+   */
+  private Map<File, IContainer> findContainers(Collection<File> sources, Set<IProject> dependencies) {
+    IProject project = getMavenProjectFacade().getProject();
+    IPath projectLocation = project.getLocation();
+    Map<File, IContainer> containers = new HashMap<File, IContainer>();
+    for (File source : sources) {
+      IPath location = Path.fromOSString(source.getAbsolutePath());
+      IContainer container;
+      if (projectLocation != null && projectLocation.isPrefixOf(location)) {
+        IPath relativePath = location.makeRelativeTo(projectLocation);
+        container = relativePath.isEmpty() ? project : project.getFolder(relativePath);
+      } else {
+        container = ResourcesPlugin.getWorkspace().getRoot().getContainerForLocation(location);
+      }
+      if (container != null && container.getProject() != null) {
+        containers.put(source, container);
+        if (!project.equals(container.getProject())) {
+          dependencies.add(container.getProject());
+        }
+      }
+    }
+    return containers;
+  }
+
+  /**
+   * Polls the context folders outside of the workspace, if enabled with the
+   * <code>m2e.wro4j.watch.interval</code> pom property, set to the polling interval in
+   * milliseconds.
+   */
+  private void watchExternalFolders(Collection<File> sources, ResourceClassifier classifier) {
+    IProject project = getMavenProjectFacade().getProject();
+    long interval = getLongProperty(getMavenProjectFacade().getMavenProject(), M2E_WRO4J_WATCH_INTERVAL_KEY);
+    List<File> externalFolders = new ArrayList<File>(sources);
+    externalFolders.removeAll(findContainers(sources, new HashSet<IProject>()).keySet());
+    if (interval <= 0 || externalFolders.isEmpty()) {
+      ExternalFolderWatcher.stop(project);
+      return;
+    }
+    ExternalFolderWatcher.get(project).watch(externalFolders, classifier, interval);
+  }
+
+  private IContainer getOutputFolder() {
+    return getOutputFolder(getMavenProjectFacade());
+  }
+
+  /**
+   * @return the output classes folder, where <code>classpath:</code> resources are read from
+   */
+  private static IContainer getOutputFolder(IMavenProjectFacade facade) {
+    IPath outputLocation = facade.getOutputLocation();
+    if (outputLocation == null || outputLocation.segmentCount() < 2) {
+      return null;
+    }
+    return ResourcesPlugin.getWorkspace().getRoot().getFolder(outputLocation);
+  }
+
+  /**
+   * @return the configuration resolved by a previous build, unless the pom or the execution
+   *         changed since
+   */
+  private ResolvedConfiguration getResolvedConfiguration(MojoExecution mojoExecution, boolean forceResolution)
+      throws CoreException, IOException {
+    IMavenProjectFacade facade = getMavenProjectFacade();
+    long pomStamp = facade.getPom().getModificationStamp();
+    // resolved in the background when the project was configured, from the current project model
+    ResolvedConfiguration prewarmedConfiguration = PrewarmJob.takeConfiguration(facade.getProject(), mojoExecution,
+        pomStamp);
+    if (prewarmedConfiguration != null) {
+      resolvedConfiguration = prewarmedConfiguration;
+      forceResolution = false;
+    }
+    if (forceResolution || resolvedConfiguration == null
+        || !resolvedConfiguration.isResolvedFor(mojoExecution, pomStamp)) {
+      resolvedConfiguration = ResolvedConfiguration.resolve(facade, getSession(), mojoExecution);
+    }
+    return resolvedConfiguration;
+  }
+
+  @Override
+  public void clean(IProgressMonitor monitor) throws CoreException {
+    resolvedConfiguration = null;
+    buildScope = null;
+    releaseWarmEngine();
+    ExternalFolderWatcher.stop(getMavenProjectFacade().getProject());
+    PrewarmJob.cancel(getMavenProjectFacade().getProject());
+    MojoExecution mojoExecution = getMojoExecution();
+    if (mojoExecution != null) {
+      BackgroundBuildJob.cancel(getMavenProjectFacade().getPom(), mojoExecution.getExecutionId());
+      Wro4jProjectState.remove(getMavenProjectFacade().getProject(), mojoExecution.getExecutionId());
+    }
+    super.clean(monitor);
+  }
+
+  /**
+   * @return the groups the changed web resources belong to, or <code>null</code> if all groups
+   *         need to be rebuilt
+   */
+  private Set<String> getAffectedGroups(Wro4jProjectState state, ResolvedConfiguration configuration,
+      Collection<String> changedResources) {
+    WroModel model = getModel(state, configuration);
+    if (!model.isIndexable()) {
+      return null;
+    }
+    // partials are mapped to the groups of the stylesheets importing them
+    Set<String> groupResources = new HashSet<String>();
+    for (String changedResource : changedResources) {
+      boolean mapped = false;
+      for (String dependent : state.getDependents(changedResource)) {
+        if (!model.getGroupsContaining(dependent).isEmpty()) {
+          groupResources.add(dependent);
+          mapped = true;
+        }
+      }
+      if (!mapped) {
+        // pulled by something else we don't know about
+        return null;
+      }
+    }
+    Set<String> affectedGroups = model.getAffectedGroups(groupResources);
+    if (affectedGroups == null) {
       return null;
     }
-    
-    IPath relativePath = originalDestinationFolderPath.makeRelativeTo(defaultOutputPathPrefix);
-    IPath customPath = webResourcesFolder.getLocation().append(relativePath);
-    return customPath;
+    return configuration.retainConfiguredGroups(affectedGroups);
+  }
+
+  /**
+   * Computes a key identifying the wro model, the processors configuration and the mojo
+   * configuration, insensitive to the formatting of the descriptors.
+   */
+  private long computeModelKey(WroModel model, ResolvedConfiguration configuration, Xpp3Dom customConfiguration)
+      throws IOException {
+    Crc64 crc = new Crc64();
+    crc.update(String.valueOf(getMojoExecution().getVersion()));
+    crc.update(model.getSignature());
+    updateExtraConfiguration(crc, configuration);
+    crc.update(customConfiguration.toString());
+    return crc.getValue();
+  }
+
+  /**
+   * Adds the processors configuration, insensitive to the formatting of the properties file.
+   */
+  private void updateExtraConfiguration(Crc64 crc, ResolvedConfiguration configuration) throws IOException {
+    File extraConfigFile = configuration.getExtraConfigFile();
+    if (extraConfigFile != null && extraConfigFile.isFile()) {
+      Properties properties = new Properties();
+      InputStream in = new FileInputStream(extraConfigFile);
+      try {
+        properties.load(in);
+      } finally {
+        IOUtil.close(in);
+      }
+      for (String name : new TreeSet<String>(properties.stringPropertyNames())) {
+        crc.update(name + "=" + properties.getProperty(name).trim() + "\n");
+      }
+    }
+  }
+
+  /**
+   * Records the digests of all the web resources found under the context folders and the output
+   * classes folder.
+   *
+   * @return the number of web resources found
+   */
+  private int scanResources(Wro4jProjectState state, ResourceClassifier classifier, Collection<File> sources) {
+    IContainer outputFolder = getOutputFolder();
+    File classpathFolder = outputFolder == null || outputFolder.getLocation() == null ? null
+        : outputFolder.getLocation().toFile();
+    return state.scanResources(classifier, sources, classpathFolder);
+  }
+
+  /**
+   * @return the wro descriptors and web resources whose content actually changed, files which were
+   *         only touched or rewritten with the same content are left out
+   */
+  private ResourceChanges filterContentChanges(Wro4jProjectState state, ResourceClassifier classifier,
+      Collection<File> sources, Map<String, File> includedFiles) {
+    boolean knownResources = state.hasResourceDigests();
+    if (!knownResources) {
+      scanResources(state, classifier, sources);
+    }
+    ResourceChanges changes = new ResourceChanges();
+    for (Map.Entry<String, File> file : includedFiles.entrySet()) {
+      switch (classifier.classify(file.getKey())) {
+        case DESCRIPTOR:
+          if (state.updateDescriptor(file.getKey(), file.getValue())) {
+            changes.addDescriptor(file.getKey(), file.getValue());
+          }
+          break;
+        case WEB_RESOURCE:
+          // without previous digests, we can't tell what changed
+          if (state.updateResource(file.getKey(), file.getValue()) || !knownResources) {
+            changes.addWebResource(file.getKey(), file.getValue());
+          }
+          break;
+        default:
+          break;
+      }
+    }
+    return changes;
+  }
+
+  private void saveState(Wro4jProjectState state) {
+    try {
+      state.save();
+    } catch (IOException e) {
+      // Not fatal, the next session will just start with a full build
+    }
+  }
+
+  private WroModel getModel(Wro4jProjectState state, ResolvedConfiguration configuration) {
+    // the wro file is a mojo parameter, the model read for another one doesn't apply
+    File wroFile = getWroFile(configuration);
+    WroModel model = state.getModel(wroFile);
+    if (model == null) {
+      try {
+        model = WroModelReader.read(wroFile);
+      } catch (IOException e) {
+        // Unsupported or invalid model, let wro4j deal with it
+        model = WroModel.UNKNOWN;
+      }
+      state.setModel(model, wroFile);
+    }
+    return model;
+  }
+
+  static File getWroFile(ResolvedConfiguration configuration) {
+    File wroFile = configuration.getWroFile();
+    if (wroFile != null && !wroFile.exists()) {
+      // wro4j's smart model factory falls back on wro.groovy
+      File groovyFile = new File(wroFile.getParentFile(), "wro.groovy");
+      if (groovyFile.exists()) {
+        return groovyFile;
+      }
+    }
+    return wroFile;
+  }
+
+  private boolean isPomModified() {
+    IMavenProjectFacade facade = getMavenProjectFacade();
+    IResourceDelta delta = getDelta(facade.getProject());
+    if (delta == null) {
+      return false;
+    }
+
+    if (delta.findMember(facade.getPom().getProjectRelativePath()) != null) {
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Records the current state of the files the mojo is expected to write, as wro4j doesn't always
+   * write them through the build context.
+   */
+  private void trackExpectedOutputs(TrackingBuildContext trackingContext, ResolvedConfiguration configuration,
+      WroModel model, Collection<String> targetGroups) {
+    if (model.isIndexable()) {
+      Collection<String> groups = targetGroups == null ? configuration.getBuildableGroups(model) : targetGroups;
+      for (Collection<File> files : configuration.getExpectedOutputs(groups).values()) {
+        for (File file : files) {
+          trackingContext.track(file);
+        }
+      }
+    }
+    File groupNameMappingFile = configuration.getCustomLocation(ResolvedConfiguration.GROUP_NAME_MAPPING_FILE);
+    if (groupNameMappingFile != null) {
+      trackingContext.track(groupNameMappingFile);
+    }
+  }
+
+  /**
+   * Refreshes the files the mojo wrote, or the whole output folders if it's not known which.
+   */
+  private int refreshWorkspace(ResolvedConfiguration configuration, TrackingBuildContext trackingContext,
+      BuildContext buildContext) {
+    if (trackingContext.hasTrackedFiles()) {
+      return trackingContext.refreshChangedFiles(buildContext).size();
+    }
+    int refreshed = 0;
+    refreshed += refreshResource(configuration, buildContext, ResolvedConfiguration.DESTINATION_FOLDER);
+    refreshed += refreshResource(configuration, buildContext, ResolvedConfiguration.CSS_DESTINATION_FOLDER);
+    refreshed += refreshResource(configuration, buildContext, ResolvedConfiguration.JS_DESTINATION_FOLDER);
+    refreshed += refreshResource(configuration, buildContext, ResolvedConfiguration.GROUP_NAME_MAPPING_FILE);
+    return refreshed;
+  }
+
+  private int refreshResource(ResolvedConfiguration configuration,
+      BuildContext buildContext, String parameterName) {
+    File location = configuration.getCustomLocation(parameterName);
+    if (location != null && location.exists()) {
+      buildContext.refresh(location);
+      return 1;
+    }
+    return 0;
+  }
+
+  /**
+   * @return a classifier recognizing the web resources extensions set in the
+   *         <code>m2e.wro4j.extensions</code> pom property, or the default ones, and filtering the
+   *         paths with the patterns set in the <code>m2e.wro4j.includes</code> and
+   *         <code>m2e.wro4j.excludes</code> pom properties
+   */
+  static ResourceClassifier getClassifier(MavenProject mavenProject) {
+    if (mavenProject == null) {
+      return ResourceClassifier.getDefault();
+    }
+    Properties properties = mavenProject.getProperties();
+    return ResourceClassifier.get(properties.getProperty(M2E_WRO4J_EXTENSIONS_KEY),
+        properties.getProperty(M2E_WRO4J_INCLUDES_KEY), properties.getProperty(M2E_WRO4J_EXCLUDES_KEY));
   }
 
   private boolean notCleanFullBuild(int kind) {
@@ -338,80 +1350,127 @@ public class Wro4jBuildParticipant extends MojoExecutionBuildParticipant {
         && IncrementalProjectBuilder.CLEAN_BUILD != kind;
   }
   
-  private static class CleanBuildContext implements BuildContext {
-
-	private BuildContext originalContext;
-
-	CleanBuildContext(BuildContext originalContext) {
-		this.originalContext = originalContext;
-	}
-	  
-	public boolean hasDelta(String relpath) {
-		return true;
-	}
-
-	public boolean hasDelta(File file) {
-		return true;
-	}
-
-	public boolean hasDelta(List relpaths) {
-		return true;
-	}
-
-	public void refresh(File file) {
-		originalContext.refresh(file);
-	}
-
-	public OutputStream newFileOutputStream(File file) throws IOException {
-		return originalContext.newFileOutputStream(file);
-	}
-
-	public Scanner newScanner(File basedir) {
-		return originalContext.newScanner(basedir);
-	}
-
-	public Scanner newDeleteScanner(File basedir) {
-		return originalContext.newDeleteScanner(basedir);
-	}
-
-	public Scanner newScanner(File basedir, boolean ignoreDelta) {
-		return originalContext.newScanner(basedir, ignoreDelta);
-	}
-
-	public boolean isIncremental() {
-		return false;
-	}
-
-	public void setValue(String key, Object value) {
-		originalContext.setValue(key, value);
-	}
-
-	public Object getValue(String key) {
-		return originalContext.getValue(key);
-	}
-
-	public void addWarning(File file, int line, int column, String message,
-			Throwable cause) {
-		originalContext.addWarning(file, line, column, message, cause);
-	}
-
-	public void addError(File file, int line, int column, String message,
-			Throwable cause) {
-		originalContext.addError(file, line, column, message, cause);
-	}
-
-	public void addMessage(File file, int line, int column, String message,
-			int severity, Throwable cause) {
-		originalContext.addMessage(file, line, column, message, severity, cause);
-	}
-
-	public void removeMessages(File file) {
-		originalContext.removeMessages(file);
-	}
-
-	public boolean isUptodate(File target, File source) {
-		return false;
-	}
+  /**
+   * What a build found out so far, handed from one phase to the next.
+   */
+  private static class BuildPlan {
+
+    final Wro4jProjectState state;
+
+    final ResolvedConfiguration configuration;
+
+    /**
+     * The configuration wro4j runs with, restricted to the groups to build
+     */
+    final Xpp3Dom customConfiguration;
+
+    final BuildContext originalBuildContext;
+
+    final boolean fullBuild;
+
+    final boolean pomModified;
+
+    /**
+     * Other projects holding context folders, we need their deltas too
+     */
+    final Set<IProject> dependencies = new LinkedHashSet<IProject>();
+
+    /**
+     * Groups a canceled build didn't get to
+     */
+    final Set<String> interruptedGroups;
+
+    /**
+     * What wro4j gets to see, kept local as the participants of several projects can run at once
+     */
+    BuildContext buildContext;
+
+    ResourceClassifier classifier;
+
+    WroModel previousModel;
+
+    WroModel model;
+
+    /**
+     * The groups to build, <code>null</code> for all of them
+     */
+    Set<String> targetGroups;
+
+    /**
+     * Previous build results might still be valid, if descriptors and configuration didn't really
+     * change
+     */
+    boolean checkPreviousResults;
+
+    /**
+     * The groups of canceled builds were forgotten, so they're outdated too
+     */
+    boolean allOutdatedGroups;
+
+    Long engineKey;
+
+    Map<String, Long> fingerprints;
+
+    /**
+     * The groups built, whether by the mojo or not, <code>null</code> if not known
+     */
+    Collection<String> builtGroups;
+
+    /**
+     * The groups left to the mojo
+     */
+    Collection<String> mojoGroups;
+
+    boolean sharingGroups;
+
+    OutputCache outputCache;
+
+    Map<String, Long> sharedKeys;
+
+    BuildPlan(Wro4jProjectState state, ResolvedConfiguration configuration, BuildContext originalBuildContext,
+        boolean fullBuild, boolean pomModified) {
+      this.state = state;
+      this.configuration = configuration;
+      this.customConfiguration = configuration.getCustomConfiguration();
+      this.originalBuildContext = originalBuildContext;
+      this.buildContext = originalBuildContext;
+      this.fullBuild = fullBuild;
+      this.pomModified = pomModified;
+      this.interruptedGroups = state.getInterruptedGroups();
+    }
+  }
+
+  static class CleanBuildContext extends ForwardingBuildContext {
+
+    CleanBuildContext(BuildContext originalContext) {
+      super(originalContext);
+    }
+
+    @Override
+    public boolean hasDelta(String relpath) {
+      return true;
+    }
+
+    @Override
+    public boolean hasDelta(File file) {
+      return true;
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public boolean hasDelta(List relpaths) {
+      return true;
+    }
+
+    @Override
+    public boolean isIncremental() {
+      return false;
+    }
+
+    @Override
+    public boolean isUptodate(File target, File source) {
+      return false;
+    }
 
   }
 
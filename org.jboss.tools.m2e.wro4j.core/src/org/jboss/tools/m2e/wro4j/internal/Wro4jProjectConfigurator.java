@@ -22,11 +22,20 @@ public class Wro4jProjectConfigurator extends AbstractProjectConfigurator {
     public AbstractBuildParticipant getBuildParticipant( IMavenProjectFacade projectFacade,
                                                          MojoExecution execution,
                                                          IPluginExecutionMetadata executionMetadata ){
+        if ( LintBuildParticipant.isLintGoal( execution ) ) {
+            return new LintBuildParticipant( execution );
+        }
         return new Wro4jBuildParticipant( execution );
     }
 
 	@Override
 	public void configure(ProjectConfigurationRequest request, IProgressMonitor monitor) throws CoreException {
-		// Nothing to configure here
+		// Nothing to configure here, but the first build can be prepared in the background
+		PrewarmJob.schedule(request.getMavenProjectFacade());
+	}
+
+	@Override
+	public void unconfigure(ProjectConfigurationRequest request, IProgressMonitor monitor) throws CoreException {
+		PrewarmJob.cancel(request.getProject());
 	}
 }
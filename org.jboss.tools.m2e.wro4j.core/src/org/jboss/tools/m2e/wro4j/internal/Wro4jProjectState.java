@@ -0,0 +1,488 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * wro4j related state of a project, kept across builds and persisted under the project working
+ * location so it survives workspace restarts :
+ * <ul>
+ * <li>the wro model, the descriptor it was read from and a key identifying the descriptors and
+ * mojo configuration it was built with,</li>
+ * <li>the content digests of every web resource under the context folders and of the wro
+ * descriptors,</li>
+ * <li>the references between stylesheets, through <code>@import</code> and <code>url()</code>,</li>
+ * <li>for each group, a fingerprint of its inputs and the digests of the files generated the last
+ * time it was built,</li>
+ * <li>the groups canceled builds didn't get to build.</li>
+ * </ul>
+ * A project gets one state per wro4j execution, as each execution has its own descriptors,
+ * groups and destination folders.
+ */
+class Wro4jProjectState implements Serializable {
+
+  private static final long serialVersionUID = 5L;
+
+  static final String PLUGIN_ID = "org.jboss.tools.m2e.wro4j.core";
+
+  /**
+   * Stands for every group in the interrupted groups, when the canceled build didn't know which
+   * groups it was building
+   */
+  static final String ALL_GROUPS = "*";
+
+  private static final String STATE_FILE_PREFIX = "wro4j-build-state-";
+
+  private static final String STATE_FILE_SUFFIX = ".ser";
+
+  private static final Map<IProject, Map<String, Wro4jProjectState>> STATES = new ConcurrentHashMap<IProject, Map<String, Wro4jProjectState>>();
+
+  private transient File stateFile;
+
+  private WroModel model;
+
+  /**
+   * Path of the descriptor the model was read from
+   */
+  private String modelFile;
+
+  private Long modelKey;
+
+  private DigestStore resources = new DigestStore();
+
+  private DigestStore descriptors = new DigestStore();
+
+  private ImportGraph imports = new ImportGraph();
+
+  private Map<String, GroupRecord> groupRecords = new HashMap<String, GroupRecord>();
+
+  /**
+   * Groups a canceled or failed build didn't build, the next build builds them whatever its delta
+   */
+  private Set<String> interruptedGroups = new TreeSet<String>();
+
+  private Wro4jProjectState() {
+  }
+
+  static synchronized Wro4jProjectState get(IProject project, String executionId) {
+    Map<String, Wro4jProjectState> states = STATES.get(project);
+    if (states == null) {
+      states = new HashMap<String, Wro4jProjectState>();
+      STATES.put(project, states);
+    }
+    Wro4jProjectState state = states.get(executionId);
+    if (state == null) {
+      File stateFile = getStateFile(project, executionId);
+      state = load(stateFile);
+      if (state == null) {
+        state = new Wro4jProjectState();
+      }
+      state.stateFile = stateFile;
+      states.put(executionId, state);
+    }
+    return state;
+  }
+
+  static synchronized void remove(IProject project, String executionId) {
+    Map<String, Wro4jProjectState> states = STATES.get(project);
+    if (states != null) {
+      states.remove(executionId);
+    }
+    File stateFile = getStateFile(project, executionId);
+    if (stateFile != null && stateFile.exists()) {
+      stateFile.delete();
+    }
+  }
+
+  private static File getStateFile(IProject project, String executionId) {
+    IPath location = project.getWorkingLocation(PLUGIN_ID);
+    if (location == null) {
+      return null;
+    }
+    // execution ids end up in a file name
+    String name = STATE_FILE_PREFIX + executionId.replaceAll("[^\\w.-]", "_") + STATE_FILE_SUFFIX;
+    return location.append(name).toFile();
+  }
+
+  private static Wro4jProjectState load(File stateFile) {
+    if (stateFile == null || !stateFile.isFile()) {
+      return null;
+    }
+    ObjectInputStream in = null;
+    try {
+      in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(stateFile)));
+      return (Wro4jProjectState) in.readObject();
+    } catch (Exception e) {
+      // stale or corrupted state, start over
+      stateFile.delete();
+      return null;
+    } finally {
+      IOUtil.close(in);
+    }
+  }
+
+  /**
+   * Writes the state to the project working location.
+   */
+  synchronized void save() throws IOException {
+    if (stateFile == null) {
+      return;
+    }
+    ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(stateFile)));
+    try {
+      out.writeObject(this);
+    } finally {
+      IOUtil.close(out);
+    }
+  }
+
+  private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+    WroModel currentModel = model;
+    if (currentModel != null && !currentModel.isIndexable()) {
+      // WroModel.UNKNOWN only makes sense within the current session
+      model = null;
+    }
+    try {
+      out.defaultWriteObject();
+    } finally {
+      model = currentModel;
+    }
+  }
+
+  /**
+   * @return the last wro model read from the given descriptor, or <code>null</code> if it needs to
+   *         be (re)loaded
+   */
+  synchronized WroModel getModel(File wroFile) {
+    if (model == null || wroFile == null || !wroFile.getAbsolutePath().equals(modelFile)) {
+      return null;
+    }
+    return model;
+  }
+
+  synchronized void setModel(WroModel model, File wroFile) {
+    this.model = model;
+    this.modelFile = wroFile == null ? null : wroFile.getAbsolutePath();
+  }
+
+  synchronized void invalidateModel() {
+    model = null;
+  }
+
+  /**
+   * @return <code>true</code> if the previous build results were produced from descriptors and a
+   *         mojo configuration matching the given key.
+   */
+  synchronized boolean isModelKey(long key) {
+    return modelKey != null && modelKey.longValue() == key;
+  }
+
+  /**
+   * Forgets all previous build results, for instance when they've been produced for other
+   * descriptors or another mojo configuration.
+   */
+  synchronized void resetBuildResults(long newModelKey) {
+    modelKey = Long.valueOf(newModelKey);
+    groupRecords.clear();
+  }
+
+  synchronized boolean hasResourceDigests() {
+    return !resources.isEmpty();
+  }
+
+  /**
+   * Forgets the resources which are not part of the given set.
+   *
+   * @param uris the uris of all the resources found under the context folders
+   */
+  synchronized void retainResources(Set<String> uris) {
+    Set<String> keys = new HashSet<String>(uris.size());
+    for (String uri : uris) {
+      keys.add(WroModel.normalize(uri));
+    }
+    resources.retainAll(keys);
+    imports.retainAll(keys);
+  }
+
+  /**
+   * Records the current content of a web resource.
+   *
+   * @param uri the resource uri, relative to its context folder
+   * @return <code>true</code> if the resource was added, deleted or if its content actually
+   *         changed since it was last recorded
+   */
+  synchronized boolean updateResource(String uri, File file) {
+    String key = WroModel.normalize(uri);
+    if (!resources.update(key, file)) {
+      return false;
+    }
+    imports.update(key, file);
+    return true;
+  }
+
+  /**
+   * Records the current content of every web resource under the given folders and forgets the
+   * resources which are gone. Folders excluded by the classifier are never walked.
+   *
+   * @param classpathFolder the folder <code>classpath:</code> resources are read from, may be
+   *          <code>null</code>
+   * @return the number of web resources found
+   */
+  int scanResources(ResourceClassifier classifier, Collection<File> contextRoots, File classpathFolder) {
+    Set<String> uris = new HashSet<String>();
+    for (File contextRoot : contextRoots) {
+      // first context folder wins, like in wro4j
+      scanResources(classifier, contextRoot, "", uris);
+    }
+    if (classpathFolder != null) {
+      scanResources(classifier, classpathFolder, WroModel.CLASSPATH_PREFIX + "/", uris);
+    }
+    retainResources(uris);
+    return uris.size();
+  }
+
+  /**
+   * @param uriPrefix the uri prefix of the folder, followed by the path of the files relative to it
+   */
+  private void scanResources(ResourceClassifier classifier, File folder, String uriPrefix, Set<String> uris) {
+    File[] files = folder.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      String uri = uriPrefix + file.getName();
+      if (file.isDirectory()) {
+        if (!classifier.isPruned(uri)) {
+          scanResources(classifier, file, uri + "/", uris);
+        }
+      } else if (classifier.isWebResource(uri) && uris.add(WroModel.normalize(uri))) {
+        updateResource(uri, file);
+      }
+    }
+  }
+
+  /**
+   * @return the number of recorded web resources used by at least one group, declared in it or
+   *         pulled by its stylesheets, or of all of them if the model can't tell
+   */
+  synchronized int countGroupResources() {
+    Set<String> uris = resources.getKeys();
+    if (model == null || !model.isIndexable()) {
+      return uris.size();
+    }
+    Set<String> matched = new HashSet<String>();
+    for (String group : model.getGroupNames()) {
+      Set<String> groupResources = model.getGroupResources(group, uris);
+      if (groupResources != null) {
+        matched.addAll(imports.getReferences(groupResources));
+      }
+    }
+    matched.retainAll(uris);
+    return matched.size();
+  }
+
+  /**
+   * @return the given resource and the stylesheets pulling it through <code>@import</code> or
+   *         <code>url()</code>, directly or transitively
+   */
+  synchronized Set<String> getDependents(String uri) {
+    return imports.getDependents(WroModel.normalize(uri));
+  }
+
+  /**
+   * Records the current content of a wro descriptor (wro.xml, wro.groovy, wro.properties).
+   *
+   * @return <code>true</code> if the descriptor is new or if its content changed since it was
+   *         last recorded
+   */
+  synchronized boolean updateDescriptor(String uri, File file) {
+    return descriptors.update(WroModel.normalize(uri), file);
+  }
+
+  /**
+   * Computes a fingerprint of the inputs of the given groups, including the resources of the
+   * groups they reference and the resources pulled by their stylesheets. Only the resources of the
+   * given groups are looked at, so fingerprinting the groups of an incremental build doesn't cost
+   * more with the size of the project.
+   *
+   * @param groups the groups to fingerprint, <code>null</code> for all the groups of the model
+   */
+  synchronized Map<String, Long> computeFingerprints(Collection<String> groups) {
+    Map<String, Long> fingerprints = new HashMap<String, Long>();
+    if (model == null || !model.isIndexable()) {
+      return fingerprints;
+    }
+    Set<String> uris = resources.getKeys();
+    for (String group : groups == null ? model.getGroupNames() : groups) {
+      Set<String> groupResources = model.getGroupResources(group, uris);
+      if (groupResources == null) {
+        continue;
+      }
+      long fingerprint = 0;
+      for (String uri : imports.getReferences(groupResources)) {
+        Long digest = resources.getDigest(uri);
+        if (digest != null) {
+          // xor keeps the fingerprint independent of the iteration order
+          Crc64 crc = new Crc64();
+          crc.update(uri);
+          crc.update(digest.longValue());
+          fingerprint ^= crc.getValue();
+        }
+      }
+      fingerprints.put(group, Long.valueOf(fingerprint));
+    }
+    return fingerprints;
+  }
+
+  /**
+   * @return the groups which were never built, whose inputs changed or whose generated files
+   *         were modified or deleted since they were last built.
+   */
+  synchronized Set<String> getOutdatedGroups(Map<String, Long> fingerprints) {
+    Set<String> outdated = new TreeSet<String>();
+    for (WroModel.Group group : model.getGroups()) {
+      if (group.isAbstract()) {
+        continue;
+      }
+      GroupRecord record = groupRecords.get(group.getName());
+      if (record == null || !record.isUptodate(fingerprints.get(group.getName()))) {
+        outdated.add(group.getName());
+      }
+    }
+    return outdated;
+  }
+
+  /**
+   * Records the result of a successful build of the given groups.
+   *
+   * @param outputs the files generated for each group
+   */
+  synchronized void recordBuild(Collection<String> groups, Map<String, Long> fingerprints,
+      Map<String, Collection<File>> outputs) {
+    for (String group : groups) {
+      Long fingerprint = fingerprints.get(group);
+      Collection<File> files = outputs.get(group);
+      if (fingerprint == null || files == null || files.isEmpty()) {
+        groupRecords.remove(group);
+        continue;
+      }
+      GroupRecord record = new GroupRecord(fingerprint.longValue());
+      for (File file : files) {
+        try {
+          record.outputs.put(file.getAbsolutePath(), Long.valueOf(Crc64.digest(file)));
+        } catch (IOException e) {
+          record = null;
+          break;
+        }
+      }
+      if (record == null) {
+        groupRecords.remove(group);
+      } else {
+        groupRecords.put(group, record);
+      }
+    }
+  }
+
+  synchronized void forgetGroups(Collection<String> groups) {
+    if (groups == null) {
+      groupRecords.clear();
+    } else {
+      groupRecords.keySet().removeAll(groups);
+    }
+  }
+
+  /**
+   * Records that a build was canceled or failed before building the given groups, whose changes
+   * it already recorded as seen. Their previous results are forgotten, the files they generated are
+   * left as they are.
+   *
+   * @param groups the groups left to build, <code>null</code> if not known
+   */
+  synchronized void interruptGroups(Collection<String> groups) {
+    forgetGroups(groups);
+    if (groups == null) {
+      interruptedGroups.add(ALL_GROUPS);
+    } else {
+      interruptedGroups.addAll(groups);
+    }
+  }
+
+  synchronized boolean hasInterruptedGroups() {
+    return !interruptedGroups.isEmpty();
+  }
+
+  /**
+   * @return the groups left to build by canceled builds, {@link #ALL_GROUPS} standing for all of
+   *         them
+   */
+  synchronized Set<String> getInterruptedGroups() {
+    return new TreeSet<String>(interruptedGroups);
+  }
+
+  /**
+   * @param groups the groups a build went through, <code>null</code> if it built all of them
+   */
+  synchronized void clearInterruptedGroups(Collection<String> groups) {
+    if (groups == null) {
+      interruptedGroups.clear();
+    } else {
+      interruptedGroups.removeAll(groups);
+    }
+  }
+
+  private static class GroupRecord implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long inputFingerprint;
+
+    private final Map<String, Long> outputs = new HashMap<String, Long>();
+
+    GroupRecord(long inputFingerprint) {
+      this.inputFingerprint = inputFingerprint;
+    }
+
+    boolean isUptodate(Long currentFingerprint) {
+      if (currentFingerprint == null || currentFingerprint.longValue() != inputFingerprint) {
+        return false;
+      }
+      for (Map.Entry<String, Long> output : outputs.entrySet()) {
+        File file = new File(output.getKey());
+        try {
+          if (!file.isFile() || Crc64.digest(file) != output.getValue().longValue()) {
+            return false;
+          }
+        } catch (IOException e) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
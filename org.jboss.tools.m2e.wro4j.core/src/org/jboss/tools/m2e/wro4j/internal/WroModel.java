@@ -0,0 +1,389 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Lightweight view of a wro4j model : the groups declared in wro.xml / wro.groovy and the
+ * resource uris they reference, indexed so that the groups depending on a given resource can be
+ * found without walking the whole model.
+ */
+class WroModel implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  static final String CLASSPATH_PREFIX = "classpath:";
+
+  /**
+   * Model that could not be read, every change must rebuild all groups.
+   */
+  static final WroModel UNKNOWN = new WroModel(false);
+
+  private final Map<String, Group> groups = new LinkedHashMap<String, Group>();
+
+  private final boolean indexable;
+
+  private transient Map<String, Set<String>> exactIndex;
+
+  private transient List<WildcardEntry> wildcardIndex;
+
+  private transient Map<String, Set<String>> referrers;
+
+  WroModel() {
+    this(true);
+  }
+
+  private WroModel(boolean indexable) {
+    this.indexable = indexable;
+  }
+
+  boolean isIndexable() {
+    return indexable;
+  }
+
+  Group addGroup(String name) {
+    Group group = groups.get(name);
+    if (group == null) {
+      group = new Group(name);
+      groups.put(name, group);
+      exactIndex = null;
+    }
+    return group;
+  }
+
+  Group getGroup(String name) {
+    return groups.get(name);
+  }
+
+  Collection<Group> getGroups() {
+    return Collections.unmodifiableCollection(groups.values());
+  }
+
+  Set<String> getGroupNames() {
+    return Collections.unmodifiableSet(groups.keySet());
+  }
+
+  /**
+   * Returns the names of the groups that need to be rebuilt when the given resources change,
+   * including the groups referencing them through group-ref, or <code>null</code> if at least one
+   * of the resources can not be mapped to a group, in which case every group must be rebuilt.
+   *
+   * @param uris resource uris, relative to a context folder (<code>/css/style.css</code>) or to the
+   *          classpath (<code>classpath:/css/style.css</code>)
+   */
+  synchronized Set<String> getAffectedGroups(Collection<String> uris) {
+    if (!indexable) {
+      return null;
+    }
+    Set<String> affected = new TreeSet<String>();
+    for (String uri : uris) {
+      Set<String> owners = getGroupsContaining(uri);
+      if (owners.isEmpty()) {
+        // Might be pulled by a css @import or something else we don't know about
+        return null;
+      }
+      affected.addAll(owners);
+    }
+    for (Iterator<String> ite = affected.iterator(); ite.hasNext();) {
+      Group group = groups.get(ite.next());
+      if (group == null || group.isAbstract()) {
+        ite.remove();
+      }
+    }
+    return affected;
+  }
+
+  /**
+   * @return the groups declaring the given resource, directly or through group-ref, abstract
+   *         groups included.
+   */
+  synchronized Set<String> getGroupsContaining(String uri) {
+    if (exactIndex == null) {
+      buildIndex();
+    }
+    Set<String> owners = getGroupsFor(normalize(uri));
+    addReferrers(owners);
+    return owners;
+  }
+
+  /**
+   * @return the uris among the given ones which the given group declares, directly or through
+   *         group-ref, or <code>null</code> if the group is unknown. The given uris are only
+   *         walked if the group declares wildcards.
+   */
+  synchronized Set<String> getGroupResources(String name, Set<String> uris) {
+    if (!groups.containsKey(name)) {
+      return null;
+    }
+    if (exactIndex == null) {
+      buildIndex();
+    }
+    Set<String> resources = new HashSet<String>();
+    Set<String> visited = new HashSet<String>();
+    LinkedList<String> queue = new LinkedList<String>();
+    queue.add(name);
+    while (!queue.isEmpty()) {
+      Group group = groups.get(queue.removeFirst());
+      if (group == null || !visited.add(group.getName())) {
+        continue;
+      }
+      boolean wildcards = false;
+      for (String resource : group.getResources()) {
+        String uri = normalize(resource);
+        if (isWildcard(uri)) {
+          wildcards = true;
+        } else if (uris.contains(uri)) {
+          resources.add(uri);
+        }
+      }
+      if (wildcards) {
+        for (WildcardEntry entry : wildcardIndex) {
+          if (!entry.group.equals(group.getName())) {
+            continue;
+          }
+          for (String uri : uris) {
+            if (entry.pattern.matcher(uri).matches()) {
+              resources.add(uri);
+            }
+          }
+        }
+      }
+      queue.addAll(group.getGroupRefs());
+    }
+    return resources;
+  }
+
+  /**
+   * @return a string representation of the groups, independent of the formatting of the model
+   *         file it was read from.
+   */
+  String getSignature() {
+    StringBuilder signature = new StringBuilder();
+    for (Group group : groups.values()) {
+      appendSignature(signature, group);
+    }
+    return signature.toString();
+  }
+
+  /**
+   * @return a string representation of the given group and of the groups it references, whatever
+   *         the other groups of the model, or <code>null</code> if the group is unknown.
+   */
+  String getGroupSignature(String name) {
+    if (!groups.containsKey(name)) {
+      return null;
+    }
+    StringBuilder signature = new StringBuilder();
+    Set<String> visited = new TreeSet<String>();
+    LinkedList<String> queue = new LinkedList<String>();
+    queue.add(name);
+    while (!queue.isEmpty()) {
+      String groupName = queue.removeFirst();
+      if (!visited.add(groupName)) {
+        continue;
+      }
+      Group group = groups.get(groupName);
+      if (group == null) {
+        signature.append("missing:").append(groupName).append(';');
+      } else {
+        appendSignature(signature, group);
+        queue.addAll(group.getGroupRefs());
+      }
+    }
+    return signature.toString();
+  }
+
+  private static void appendSignature(StringBuilder signature, Group group) {
+    signature.append(group.getName()).append(group.isAbstract() ? "(abstract)" : "").append('{');
+    for (String resource : group.getResources()) {
+      signature.append(normalize(resource)).append(';');
+    }
+    for (String ref : group.getGroupRefs()) {
+      signature.append("ref:").append(ref).append(';');
+    }
+    signature.append('}');
+  }
+
+  private Set<String> getGroupsFor(String uri) {
+    Set<String> owners = new TreeSet<String>();
+    Set<String> exact = exactIndex.get(uri);
+    if (exact != null) {
+      owners.addAll(exact);
+    }
+    for (WildcardEntry entry : wildcardIndex) {
+      if (entry.pattern.matcher(uri).matches()) {
+        owners.add(entry.group);
+      }
+    }
+    return owners;
+  }
+
+  private void addReferrers(Set<String> affected) {
+    LinkedList<String> queue = new LinkedList<String>(affected);
+    while (!queue.isEmpty()) {
+      Set<String> parents = referrers.get(queue.removeFirst());
+      if (parents != null) {
+        for (String parent : parents) {
+          if (affected.add(parent)) {
+            queue.add(parent);
+          }
+        }
+      }
+    }
+  }
+
+  private void buildIndex() {
+    exactIndex = new HashMap<String, Set<String>>();
+    wildcardIndex = new ArrayList<WildcardEntry>();
+    referrers = new HashMap<String, Set<String>>();
+    for (Group group : groups.values()) {
+      for (String resource : group.getResources()) {
+        String uri = normalize(resource);
+        if (isWildcard(uri)) {
+          wildcardIndex.add(new WildcardEntry(group.getName(), toPattern(uri)));
+        } else {
+          getOrCreate(exactIndex, uri).add(group.getName());
+        }
+      }
+      for (String ref : group.getGroupRefs()) {
+        getOrCreate(referrers, ref).add(group.getName());
+      }
+    }
+  }
+
+  private static Set<String> getOrCreate(Map<String, Set<String>> map, String key) {
+    Set<String> values = map.get(key);
+    if (values == null) {
+      values = new TreeSet<String>();
+      map.put(key, values);
+    }
+    return values;
+  }
+
+  /**
+   * Normalizes a resource uri : separators are made portable, context relative uris start with a
+   * slash, classpath uris are prefixed with <code>classpath:/</code>
+   */
+  static String normalize(String uri) {
+    String portableUri = uri.trim().replace('\\', '/');
+    if (portableUri.startsWith(CLASSPATH_PREFIX)) {
+      String path = portableUri.substring(CLASSPATH_PREFIX.length());
+      return path.startsWith("/") ? portableUri : CLASSPATH_PREFIX + "/" + path;
+    }
+    if (portableUri.indexOf(':') > 0) {
+      // http:, file: or any other external location
+      return portableUri;
+    }
+    return portableUri.startsWith("/") ? portableUri : "/" + portableUri;
+  }
+
+  private static boolean isWildcard(String uri) {
+    return uri.indexOf('*') > -1 || uri.indexOf('?') > -1;
+  }
+
+  /**
+   * Converts a wro4j wildcard uri to a regular expression : <code>**</code> spans folders,
+   * <code>*</code> and <code>?</code> stay within a folder.
+   */
+  private static Pattern toPattern(String uri) {
+    StringBuilder regex = new StringBuilder();
+    int i = 0;
+    while (i < uri.length()) {
+      char c = uri.charAt(i);
+      if (c == '*' && i + 1 < uri.length() && uri.charAt(i + 1) == '*') {
+        regex.append(".*");
+        i += 2;
+        continue;
+      }
+      if (c == '*') {
+        regex.append("[^/]*");
+      } else if (c == '?') {
+        regex.append("[^/]");
+      } else {
+        regex.append(Pattern.quote(String.valueOf(c)));
+      }
+      i++;
+    }
+    return Pattern.compile(regex.toString());
+  }
+
+  static class Group implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+
+    private final List<String> resources = new ArrayList<String>();
+
+    private final List<String> groupRefs = new ArrayList<String>();
+
+    private boolean isAbstract;
+
+    Group(String name) {
+      this.name = name;
+    }
+
+    String getName() {
+      return name;
+    }
+
+    /**
+     * Abstract groups are only meant to be referenced by other groups, wro4j doesn't build them.
+     */
+    boolean isAbstract() {
+      return isAbstract;
+    }
+
+    void setAbstract(boolean isAbstract) {
+      this.isAbstract = isAbstract;
+    }
+
+    List<String> getResources() {
+      return resources;
+    }
+
+    List<String> getGroupRefs() {
+      return groupRefs;
+    }
+
+    void addResource(String uri) {
+      resources.add(uri);
+    }
+
+    void addGroupRef(String group) {
+      groupRefs.add(group);
+    }
+  }
+
+  private static class WildcardEntry {
+
+    private final String group;
+
+    private final Pattern pattern;
+
+    WildcardEntry(String group, Pattern pattern) {
+      this.group = group;
+      this.pattern = pattern;
+    }
+  }
+}
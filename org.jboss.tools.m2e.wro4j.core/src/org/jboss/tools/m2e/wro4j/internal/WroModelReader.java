@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+package org.jboss.tools.m2e.wro4j.internal;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Reads the groups of a wro.xml or wro.groovy model file. Only the constructs needed to map
+ * resources to groups are supported, an {@link IOException} is thrown for anything else (imports,
+ * arbitrary groovy code), so callers can fall back to rebuilding every group.
+ */
+class WroModelReader {
+
+  private static final String GROUP = "group";
+  private static final String GROUP_REF = "group-ref";
+  private static final String CSS = "css";
+  private static final String JS = "js";
+  private static final String IMPORT = "import";
+
+  private WroModelReader() {
+  }
+
+  static WroModel read(File modelFile) throws IOException {
+    if (modelFile == null || !modelFile.isFile()) {
+      throw new IOException("wro model file not found : " + modelFile);
+    }
+    String name = modelFile.getName().toLowerCase();
+    if (name.endsWith(".xml")) {
+      return readXml(modelFile);
+    }
+    if (name.endsWith(".groovy")) {
+      return readGroovy(FileUtils.fileRead(modelFile, "UTF-8"));
+    }
+    throw new IOException("Unsupported wro model format : " + modelFile);
+  }
+
+  private static WroModel readXml(File modelFile) throws IOException {
+    Document document;
+    try {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setNamespaceAware(true);
+      DocumentBuilder builder = factory.newDocumentBuilder();
+      document = builder.parse(modelFile);
+    } catch (ParserConfigurationException e) {
+      throw new IOException(e.getMessage());
+    } catch (SAXException e) {
+      throw new IOException("Invalid wro model " + modelFile + " : " + e.getMessage());
+    }
+    WroModel model = new WroModel();
+    NodeList children = document.getDocumentElement().getChildNodes();
+    for (int i = 0; i < children.getLength(); i++) {
+      Node node = children.item(i);
+      if (node.getNodeType() != Node.ELEMENT_NODE) {
+        continue;
+      }
+      String nodeName = getName(node);
+      if (IMPORT.equals(nodeName)) {
+        throw new IOException("Imported wro models are not supported");
+      }
+      if (GROUP.equals(nodeName)) {
+        readXmlGroup(model, (Element) node);
+      }
+    }
+    return model;
+  }
+
+  private static void readXmlGroup(WroModel model, Element element) {
+    WroModel.Group group = model.addGroup(element.getAttribute("name"));
+    group.setAbstract(Boolean.parseBoolean(element.getAttribute("abstract")));
+    NodeList children = element.getChildNodes();
+    for (int i = 0; i < children.getLength(); i++) {
+      Node node = children.item(i);
+      if (node.getNodeType() != Node.ELEMENT_NODE) {
+        continue;
+      }
+      String nodeName = getName(node);
+      String value = node.getTextContent().trim();
+      if (CSS.equals(nodeName) || JS.equals(nodeName)) {
+        group.addResource(value);
+      } else if (GROUP_REF.equals(nodeName)) {
+        group.addGroupRef(value);
+      }
+    }
+  }
+
+  private static String getName(Node node) {
+    return node.getLocalName() == null ? node.getNodeName() : node.getLocalName();
+  }
+
+  /**
+   * Reads the declarative subset of the wro4j groovy DSL :
+   *
+   * <pre>
+   * groups {
+   *   common {
+   *     css("/css/*.css")
+   *     js "/js/common.js"
+   *   }
+   *   all(abstract: false) {
+   *     common()
+   *     groupRef("other")
+   *   }
+   * }
+   * </pre>
+   */
+  static WroModel readGroovy(String content) throws IOException {
+    GroovyTokenizer tokens = new GroovyTokenizer(content);
+    WroModel model = new WroModel();
+    tokens.expect("groups");
+    tokens.expect("{");
+    while (!"}".equals(tokens.peek())) {
+      String name = tokens.identifier();
+      boolean isAbstract = false;
+      if ("(".equals(tokens.peek())) {
+        // group attributes, such as abstract: true
+        isAbstract = tokens.readAttributes().contains("abstract:true");
+      }
+      tokens.expect("{");
+      WroModel.Group group = model.addGroup(name);
+      group.setAbstract(isAbstract);
+      while (!"}".equals(tokens.peek())) {
+        String call = tokens.identifier();
+        String argument = null;
+        if ("(".equals(tokens.peek())) {
+          tokens.next();
+          if (!")".equals(tokens.peek())) {
+            argument = tokens.string();
+          }
+          tokens.expect(")");
+        } else {
+          argument = tokens.string();
+        }
+        if (CSS.equals(call) || JS.equals(call)) {
+          group.addResource(checkArgument(call, argument));
+        } else if ("groupRef".equals(call)) {
+          group.addGroupRef(checkArgument(call, argument));
+        } else if (argument == null) {
+          // reference to a previously declared group
+          group.addGroupRef(call);
+        } else {
+          throw new IOException("Unsupported wro.groovy construct : " + call);
+        }
+      }
+      tokens.expect("}");
+    }
+    tokens.expect("}");
+    return model;
+  }
+
+  private static String checkArgument(String call, String argument) throws IOException {
+    if (argument == null) {
+      throw new IOException("Missing argument for " + call);
+    }
+    return argument;
+  }
+
+  /**
+   * Splits groovy code in identifiers, string literals and punctuation, skipping comments.
+   */
+  private static class GroovyTokenizer {
+
+    private static final String STRING_PREFIX = "\"";
+
+    private final String content;
+
+    private int position;
+
+    private String current;
+
+    GroovyTokenizer(String content) {
+      this.content = content;
+    }
+
+    String peek() throws IOException {
+      if (current == null) {
+        current = read();
+      }
+      return current;
+    }
+
+    String next() throws IOException {
+      String token = peek();
+      current = null;
+      return token;
+    }
+
+    void expect(String expected) throws IOException {
+      String token = next();
+      if (!expected.equals(token)) {
+        throw new IOException("Expected '" + expected + "' but found '" + token + "'");
+      }
+    }
+
+    String identifier() throws IOException {
+      String token = next();
+      if (token.startsWith(STRING_PREFIX) || !Character.isJavaIdentifierStart(token.charAt(0))) {
+        throw new IOException("Expected an identifier but found '" + token + "'");
+      }
+      return token;
+    }
+
+    String string() throws IOException {
+      String token = next();
+      if (!token.startsWith(STRING_PREFIX)) {
+        throw new IOException("Expected a string but found '" + token + "'");
+      }
+      return token.substring(1);
+    }
+
+    /**
+     * Reads named arguments between parentheses, returned as a string without whitespaces, ie.
+     * <code>abstract:true</code>
+     */
+    String readAttributes() throws IOException {
+      expect("(");
+      StringBuilder attributes = new StringBuilder();
+      int depth = 1;
+      while (depth > 0) {
+        String token = next();
+        if ("(".equals(token)) {
+          depth++;
+        } else if (")".equals(token)) {
+          depth--;
+        }
+        if (depth > 0) {
+          attributes.append(token);
+        }
+      }
+      return attributes.toString();
+    }
+
+    private String read() throws IOException {
+      skipWhitespacesAndComments();
+      if (position >= content.length()) {
+        throw new IOException("Unexpected end of wro.groovy");
+      }
+      char c = content.charAt(position);
+      if (c == '"' || c == '\'') {
+        int end = content.indexOf(c, position + 1);
+        if (end < 0) {
+          throw new IOException("Unterminated string in wro.groovy");
+        }
+        String value = content.substring(position + 1, end);
+        if (c == '"' && value.indexOf("${") > -1) {
+          throw new IOException("GStrings are not supported : " + value);
+        }
+        position = end + 1;
+        return STRING_PREFIX + value;
+      }
+      if (Character.isJavaIdentifierStart(c)) {
+        int start = position;
+        while (position < content.length() && Character.isJavaIdentifierPart(content.charAt(position))) {
+          position++;
+        }
+        return content.substring(start, position);
+      }
+      position++;
+      return String.valueOf(c);
+    }
+
+    private void skipWhitespacesAndComments() {
+      while (position < content.length()) {
+        char c = content.charAt(position);
+        if (Character.isWhitespace(c) || c == ';') {
+          position++;
+        } else if (content.startsWith("//", position)) {
+          int end = content.indexOf('\n', position);
+          position = end < 0 ? content.length() : end + 1;
+        } else if (content.startsWith("/*", position)) {
+          int end = content.indexOf("*/", position + 2);
+          position = end < 0 ? content.length() : end + 2;
+        } else {
+          return;
+        }
+      }
+    }
+  }
+}
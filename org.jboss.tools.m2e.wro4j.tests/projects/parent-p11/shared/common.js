@@ -0,0 +1,3 @@
+function hello(name) {
+  alert("Hello " + name);
+}
@@ -0,0 +1,3 @@
+function hi(name) {
+	alert("Hi "+ name);
+}
\ No newline at end of file
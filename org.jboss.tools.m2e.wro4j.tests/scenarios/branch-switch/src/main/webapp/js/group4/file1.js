@@ -0,0 +1,3 @@
+function group4_file1(value) {
+	return value + 4;
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.jboss.tools.m2e.wro4j.tests;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IncrementalProjectBuilder;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * Records the changes made to the files of a project, and the builds they trigger, as a
+ * {@link DeltaScenario}. Changes made by builds, ie. generated files, are left out. The content of
+ * written files is saved next to the scenario, in a <code>&lt;name&gt;.files</code> folder.
+ */
+public class DeltaRecorder implements IResourceChangeListener {
+
+	private final IProject project;
+
+	private final DeltaScenario scenario;
+
+	private final File contentFolder;
+
+	private int contentCount;
+
+	private boolean building;
+
+	private IOException failure;
+
+	/**
+	 * @param folder where the scenario file and its contents will be written
+	 */
+	public DeltaRecorder(IProject project, String name, File folder) {
+		this.project = project;
+		this.scenario = new DeltaScenario(name, folder);
+		this.contentFolder = new File(folder, name + ".files");
+	}
+
+	public void start() {
+		ResourcesPlugin.getWorkspace().addResourceChangeListener(this,
+				IResourceChangeEvent.POST_CHANGE | IResourceChangeEvent.PRE_BUILD | IResourceChangeEvent.POST_BUILD);
+	}
+
+	/**
+	 * Stops recording and writes the scenario.
+	 *
+	 * @return the scenario file
+	 */
+	public File stop() throws IOException {
+		ResourcesPlugin.getWorkspace().removeResourceChangeListener(this);
+		if (failure != null) {
+			throw failure;
+		}
+		File file = new File(scenario.getFolder(), scenario.getName() + ".txt");
+		scenario.write(file);
+		return file;
+	}
+
+	public synchronized void resourceChanged(IResourceChangeEvent event) {
+		switch (event.getType()) {
+		case IResourceChangeEvent.PRE_BUILD:
+			scenario.add(new DeltaScenario.Step(DeltaScenario.BUILD, getBuildKind(event.getBuildKind()), null));
+			building = true;
+			break;
+		case IResourceChangeEvent.POST_BUILD:
+			building = false;
+			break;
+		default:
+			IResourceDelta delta = event.getDelta() == null ? null : event.getDelta().findMember(project.getFullPath());
+			if (building || delta == null) {
+				return;
+			}
+			try {
+				delta.accept(new IResourceDeltaVisitor() {
+					public boolean visit(IResourceDelta child) throws CoreException {
+						return record(child);
+					}
+				});
+			} catch (CoreException e) {
+				failure = new IOException(e.getMessage());
+			}
+		}
+	}
+
+	private boolean record(IResourceDelta delta) throws CoreException {
+		IResource resource = delta.getResource();
+		if (resource.getType() != IResource.FILE) {
+			// generated and derived folders aren't part of the scenario
+			return !resource.isDerived() && !"target".equals(resource.getProjectRelativePath().segment(0));
+		}
+		String path = resource.getProjectRelativePath().toString();
+		if (delta.getKind() == IResourceDelta.REMOVED) {
+			scenario.add(new DeltaScenario.Step(DeltaScenario.DELETE, path, null));
+			return false;
+		}
+		if (delta.getKind() == IResourceDelta.CHANGED && (delta.getFlags() & IResourceDelta.CONTENT) == 0) {
+			return false;
+		}
+		File file = resource.getLocation() == null ? null : resource.getLocation().toFile();
+		if (file == null || !file.isFile()) {
+			return false;
+		}
+		try {
+			String content = ++contentCount + "-" + resource.getName();
+			FileUtils.copyFile(file, new File(contentFolder, content));
+			scenario.add(new DeltaScenario.Step(DeltaScenario.WRITE, path, "@" + contentFolder.getName() + "/" + content));
+		} catch (IOException e) {
+			failure = e;
+		}
+		return false;
+	}
+
+	private static String getBuildKind(int kind) {
+		switch (kind) {
+		case IncrementalProjectBuilder.FULL_BUILD:
+			return "full";
+		case IncrementalProjectBuilder.CLEAN_BUILD:
+			return "clean";
+		case IncrementalProjectBuilder.AUTO_BUILD:
+			return "auto";
+		default:
+			return "incremental";
+		}
+	}
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.jboss.tools.m2e.wro4j.tests;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.m2e.tests.common.AbstractMavenProjectTestCase;
+
+/**
+ * Replays the scenarios of the <code>scenarios</code> folder against generated projects, and appends
+ * the measures of every build step to <code>target/replay-report.jsonl</code>. Not part of the
+ * regular test runs, use <code>mvn verify -Preplay</code>. Fixture sizes are set with the
+ * <code>replay.groups</code> (at least 4) and <code>replay.files</code> system properties, a single
+ * scenario can be selected with <code>replay.scenario</code>.
+ */
+public class DeltaReplayBenchmark extends AbstractMavenProjectTestCase {
+
+	public void testReplayScenarios() throws Exception {
+		File[] scenarioFiles = new File("scenarios").listFiles();
+		assertNotNull("scenarios are missing", scenarioFiles);
+		Arrays.sort(scenarioFiles);
+		String selected = System.getProperty("replay.scenario");
+		int groups = Integer.getInteger("replay.groups", 20).intValue();
+		int files = Integer.getInteger("replay.files", 10).intValue();
+
+		File reportFile = new File(System.getProperty("replay.report", "target/replay-report.jsonl"));
+		reportFile.getParentFile().mkdirs();
+		Writer report = new FileWriter(reportFile, true);
+		try {
+			for (File scenarioFile : scenarioFiles) {
+				DeltaScenario scenario = scenarioFile.isFile() && scenarioFile.getName().endsWith(".txt")
+						? DeltaScenario.read(scenarioFile) : null;
+				if (scenario == null || (selected != null && selected.length() > 0 && !selected.equals(scenario.getName()))) {
+					continue;
+				}
+				replay(scenario, groups, files, report);
+			}
+		} finally {
+			report.close();
+		}
+	}
+
+	private void replay(DeltaScenario scenario, int groups, int files, Writer report) throws Exception {
+		String artifactId = "replay-" + scenario.getName();
+		File pom = new FixtureGenerator(artifactId).setGroups(groups).setFilesPerGroup(files)
+			.generate(new File("target/replay/" + artifactId));
+		IProject p = importProject("target/replay/" + artifactId + "/pom.xml");
+		waitForJobsToComplete();
+		assertTrue(pom + " was not imported", p.exists());
+
+		List<DeltaReplayer.Sample> samples = new DeltaReplayer().replay(p, scenario);
+		String fields = "\"scenario\":\"" + scenario.getName() + "\",\"groups\":" + groups + ",\"files\":" + files;
+		for (DeltaReplayer.Sample sample : samples) {
+			write(report, sample.toJson(fields));
+		}
+
+		p.delete(true, true, monitor);
+	}
+
+	private static void write(Writer report, String line) throws IOException {
+		report.write(line);
+		report.write('\n');
+		report.flush();
+	}
+}
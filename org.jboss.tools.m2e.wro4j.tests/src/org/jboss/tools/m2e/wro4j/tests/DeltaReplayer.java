@@ -0,0 +1,279 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.jboss.tools.m2e.wro4j.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import junit.framework.AssertionFailedError;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IncrementalProjectBuilder;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.m2e.tests.common.JobHelpers;
+
+/**
+ * Replays a {@link DeltaScenario} against a project, measuring each build step : wall time,
+ * including the jobs the build scheduled, mojo invocations and files refreshed, read from the
+ * build metrics the connector logs, and bytes allocated by all threads.
+ */
+public class DeltaReplayer {
+
+	private static final String METRICS_FILE = "wro4j-build-metrics.jsonl";
+
+	private static final Pattern MOJO = Pattern.compile("\"phases\":\\{[^}]*\"mojo\":");
+
+	private static final Pattern OUTCOME = Pattern.compile("\"outcome\":\"([^\"]*)\"");
+
+	private static final Pattern COUNTER = Pattern.compile("\"(\\w+)\":(\\d+)");
+
+	private final IProgressMonitor monitor = new NullProgressMonitor();
+
+	public List<Sample> replay(IProject project, DeltaScenario scenario) throws IOException, CoreException,
+			InterruptedException {
+		List<Sample> samples = new ArrayList<Sample>();
+		Sample last = null;
+		for (DeltaScenario.Step step : scenario.getSteps()) {
+			String command = step.getCommand();
+			IFile file = project.getFile(step.getTarget());
+			if (DeltaScenario.BUILD.equals(command)) {
+				last = build(project, step.getTarget(), samples.size() + 1);
+				samples.add(last);
+			} else if (DeltaScenario.WRITE.equals(command)) {
+				write(file, step.getContent(scenario));
+			} else if (DeltaScenario.APPEND.equals(command)) {
+				file.appendContents(new ByteArrayInputStream(step.getContent(scenario).getBytes("UTF-8")), true, false,
+						monitor);
+			} else if (DeltaScenario.TOUCH.equals(command)) {
+				file.touch(monitor);
+			} else if (DeltaScenario.DELETE.equals(command)) {
+				project.findMember(step.getTarget()).delete(true, monitor);
+			} else if (DeltaScenario.CHECKOUT.equals(command)) {
+				FileUtils.copyDirectory(new File(scenario.getFolder(), step.getTarget()), project.getLocation().toFile());
+				project.refreshLocal(IResource.DEPTH_INFINITE, monitor);
+			} else if (DeltaScenario.EXPECT.equals(command)) {
+				if (last == null) {
+					throw new AssertionFailedError(scenario.getName() + " : '" + step + "' must follow a build step");
+				}
+				String actual = last.get(step.getTarget());
+				if (!String.valueOf(step.getArgument()).equals(actual)) {
+					throw new AssertionFailedError(scenario.getName() + " : '" + step + "' failed, build " + last.index
+							+ " reported " + actual + " in " + last);
+				}
+			} else {
+				throw new IOException(scenario.getName() + " : unknown step " + step);
+			}
+		}
+		return samples;
+	}
+
+	private void write(IFile file, String content) throws CoreException, IOException {
+		ByteArrayInputStream in = new ByteArrayInputStream(content.getBytes("UTF-8"));
+		if (file.exists()) {
+			file.setContents(in, true, false, monitor);
+		} else {
+			create(file.getParent());
+			file.create(in, true, monitor);
+		}
+	}
+
+	private void create(IContainer container) throws CoreException {
+		if (!container.exists() && container.getType() == IResource.FOLDER) {
+			create(container.getParent());
+			((IFolder) container).create(true, true, monitor);
+		}
+	}
+
+	private Sample build(IProject project, String kind, int index) throws IOException, CoreException,
+			InterruptedException {
+		File metricsFile = project.getWorkingLocation("org.jboss.tools.m2e.wro4j.core").append(METRICS_FILE).toFile();
+		int logged = readLines(metricsFile).size();
+		long allocated = getAllocatedBytes();
+		long start = System.nanoTime();
+
+		project.build(getBuildKind(kind), monitor);
+		JobHelpers.waitForJobsToComplete();
+
+		Sample sample = new Sample(index, kind);
+		sample.wallMillis = (System.nanoTime() - start) / 1000000;
+		sample.allocatedBytes = allocated < 0 ? -1 : getAllocatedBytes() - allocated;
+		List<String> lines = readLines(metricsFile);
+		// the log rolled over during the build
+		for (String line : lines.size() < logged ? lines : lines.subList(logged, lines.size())) {
+			sample.add(line);
+		}
+		return sample;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<String> readLines(File file) throws IOException {
+		return file.isFile() ? FileUtils.readLines(file, "UTF-8") : Collections.<String> emptyList();
+	}
+
+	private static int getBuildKind(String kind) {
+		if ("full".equals(kind)) {
+			return IncrementalProjectBuilder.FULL_BUILD;
+		}
+		if ("clean".equals(kind)) {
+			return IncrementalProjectBuilder.CLEAN_BUILD;
+		}
+		if ("auto".equals(kind)) {
+			return IncrementalProjectBuilder.AUTO_BUILD;
+		}
+		return IncrementalProjectBuilder.INCREMENTAL_BUILD;
+	}
+
+	/**
+	 * @return the bytes allocated so far by the live threads, or -1 if the VM can't tell. Threads
+	 *         ending during a build are left out, so the figures are a lower bound.
+	 */
+	static long getAllocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		try {
+			// com.sun.management.ThreadMXBean isn't visible to bundles, reach it through the bean
+			for (Class<?> type : threads.getClass().getInterfaces()) {
+				if ("com.sun.management.ThreadMXBean".equals(type.getName())) {
+					Method method = type.getMethod("getThreadAllocatedBytes", long[].class);
+					long total = 0;
+					for (long bytes : (long[]) method.invoke(threads, threads.getAllThreadIds())) {
+						total += Math.max(0, bytes);
+					}
+					return total;
+				}
+			}
+		} catch (Exception e) {
+			// not a HotSpot VM
+		}
+		return -1;
+	}
+
+	/**
+	 * The measures of a build step, and of all the builds it ran.
+	 */
+	public static class Sample {
+
+		final int index;
+
+		final String kind;
+
+		long wallMillis;
+
+		long allocatedBytes;
+
+		int builds;
+
+		int mojoInvocations;
+
+		String outcome;
+
+		final Map<String, Long> counters = new LinkedHashMap<String, Long>();
+
+		Sample(int index, String kind) {
+			this.index = index;
+			this.kind = kind;
+		}
+
+		void add(String metrics) {
+			builds++;
+			if (MOJO.matcher(metrics).find()) {
+				mojoInvocations++;
+			}
+			Matcher outcomeMatcher = OUTCOME.matcher(metrics);
+			outcome = outcomeMatcher.find() ? outcomeMatcher.group(1) : null;
+			int countersStart = metrics.indexOf("\"counters\":");
+			if (countersStart < 0) {
+				return;
+			}
+			Matcher counter = COUNTER.matcher(metrics);
+			counter.region(countersStart, metrics.length());
+			while (counter.find()) {
+				Long value = counters.get(counter.group(1));
+				counters.put(counter.group(1),
+						Long.valueOf((value == null ? 0 : value.longValue()) + Long.parseLong(counter.group(2))));
+			}
+		}
+
+		/**
+		 * @return the value of a measure, or of a counter summed over the builds of the step
+		 */
+		String get(String name) {
+			if ("builds".equals(name)) {
+				return String.valueOf(builds);
+			}
+			if ("mojoInvocations".equals(name)) {
+				return String.valueOf(mojoInvocations);
+			}
+			if ("outcome".equals(name)) {
+				return outcome;
+			}
+			Long value = counters.get(name);
+			return String.valueOf(value == null ? 0 : value.longValue());
+		}
+
+		public long getWallMillis() {
+			return wallMillis;
+		}
+
+		public long getAllocatedBytes() {
+			return allocatedBytes;
+		}
+
+		public int getMojoInvocations() {
+			return mojoInvocations;
+		}
+
+		public long getFilesRefreshed() {
+			return Long.parseLong(get("filesRefreshed"));
+		}
+
+		/**
+		 * @return the sample as a json object, prefixed with the given fields
+		 */
+		public String toJson(String fields) {
+			StringBuilder json = new StringBuilder("{").append(fields).append(fields.length() > 0 ? "," : "")
+				.append("\"step\":").append(index)
+				.append(",\"kind\":\"").append(kind).append('"')
+				.append(",\"wallMillis\":").append(wallMillis)
+				.append(",\"builds\":").append(builds)
+				.append(",\"mojoInvocations\":").append(mojoInvocations)
+				.append(",\"filesRefreshed\":").append(getFilesRefreshed())
+				.append(",\"allocatedBytes\":").append(allocatedBytes)
+				.append(",\"outcome\":").append(outcome == null ? "null" : "\"" + outcome + "\"")
+				.append(",\"counters\":{");
+			boolean first = true;
+			for (Map.Entry<String, Long> counter : counters.entrySet()) {
+				json.append(first ? "" : ",").append('"').append(counter.getKey()).append("\":").append(counter.getValue());
+				first = false;
+			}
+			return json.append("}}").toString();
+		}
+
+		@Override
+		public String toString() {
+			return toJson("");
+		}
+	}
+}
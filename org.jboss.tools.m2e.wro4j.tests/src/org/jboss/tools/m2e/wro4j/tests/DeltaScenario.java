@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.jboss.tools.m2e.wro4j.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * A sequence of workspace changes and builds, recorded by {@link DeltaRecorder} or written by
+ * hand, and replayed by {@link DeltaReplayer}. Scenarios are plain text files, one step per line,
+ * paths being relative to the project :
+ *
+ * <pre>
+ * build full|incremental|clean|auto
+ * write &lt;path&gt; &lt;content&gt;
+ * append &lt;path&gt; &lt;content&gt;
+ * touch &lt;path&gt;
+ * delete &lt;path&gt;
+ * checkout &lt;folder&gt;
+ * expect &lt;counter&gt; &lt;value&gt;
+ * </pre>
+ *
+ * Contents are inlined, with <code>\n</code> escapes, or read from a file relative to the scenario
+ * when prefixed with <code>@</code>. <code>checkout</code> copies a folder relative to the scenario
+ * over the project, outside of the workspace, like a branch switch would. <code>expect</code>
+ * checks a counter of the builds of the previous build step. Lines starting with <code>#</code>
+ * are comments.
+ */
+public class DeltaScenario {
+
+	public static final String BUILD = "build";
+	public static final String WRITE = "write";
+	public static final String APPEND = "append";
+	public static final String TOUCH = "touch";
+	public static final String DELETE = "delete";
+	public static final String CHECKOUT = "checkout";
+	public static final String EXPECT = "expect";
+
+	private final String name;
+
+	private final File folder;
+
+	private final List<Step> steps = new ArrayList<Step>();
+
+	public DeltaScenario(String name, File folder) {
+		this.name = name;
+		this.folder = folder;
+	}
+
+	public static DeltaScenario read(File file) throws IOException {
+		String name = file.getName();
+		if (name.endsWith(".txt")) {
+			name = name.substring(0, name.length() - 4);
+		}
+		DeltaScenario scenario = new DeltaScenario(name, file.getParentFile());
+		@SuppressWarnings("unchecked")
+		List<String> lines = FileUtils.readLines(file, "UTF-8");
+		for (int i = 0; i < lines.size(); i++) {
+			String line = lines.get(i).trim();
+			if (line.length() == 0 || line.startsWith("#")) {
+				continue;
+			}
+			String[] tokens = line.split("\\s+", 3);
+			if (tokens.length < 2) {
+				throw new IOException(file + ":" + (i + 1) + " : missing argument in " + line);
+			}
+			scenario.add(new Step(tokens[0], tokens[1], tokens.length > 2 ? tokens[2] : null));
+		}
+		return scenario;
+	}
+
+	public void write(File file) throws IOException {
+		StringBuilder content = new StringBuilder();
+		for (Step step : steps) {
+			content.append(step).append('\n');
+		}
+		FileUtils.writeStringToFile(file, content.toString(), "UTF-8");
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the folder <code>@</code> contents and <code>checkout</code> folders are relative to
+	 */
+	public File getFolder() {
+		return folder;
+	}
+
+	public void add(Step step) {
+		steps.add(step);
+	}
+
+	public List<Step> getSteps() {
+		return Collections.unmodifiableList(steps);
+	}
+
+	public static class Step {
+
+		private final String command;
+
+		private final String target;
+
+		private final String argument;
+
+		public Step(String command, String target, String argument) {
+			this.command = command;
+			this.target = target;
+			this.argument = argument;
+		}
+
+		public String getCommand() {
+			return command;
+		}
+
+		/**
+		 * @return the path, folder, build kind or counter the step applies to
+		 */
+		public String getTarget() {
+			return target;
+		}
+
+		public String getArgument() {
+			return argument;
+		}
+
+		/**
+		 * @return the content of a write or append step
+		 */
+		public String getContent(DeltaScenario scenario) throws IOException {
+			if (argument == null) {
+				return "";
+			}
+			if (argument.startsWith("@")) {
+				return FileUtils.readFileToString(new File(scenario.getFolder(), argument.substring(1)), "UTF-8");
+			}
+			return argument.replace("\\n", "\n");
+		}
+
+		@Override
+		public String toString() {
+			return command + " " + target + (argument == null ? "" : " " + argument);
+		}
+	}
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Red Hat, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.jboss.tools.m2e.wro4j.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Generates war projects with many wro4j groups, bigger than the functional test fixtures. Group
+ * <code>groupN</code> merges <code>css/groupN/*.css</code> and <code>js/groupN/*.js</code>, the
+ * first stylesheet of each group importing <code>css/partials/colors.css</code>.
+ */
+public class FixtureGenerator {
+
+	private final String artifactId;
+
+	private int groups = 20;
+
+	private int filesPerGroup = 10;
+
+	private final Map<String, String> properties = new LinkedHashMap<String, String>();
+
+	public FixtureGenerator(String artifactId) {
+		this.artifactId = artifactId;
+	}
+
+	public FixtureGenerator setGroups(int groups) {
+		this.groups = groups;
+		return this;
+	}
+
+	public FixtureGenerator setFilesPerGroup(int filesPerGroup) {
+		this.filesPerGroup = filesPerGroup;
+		return this;
+	}
+
+	/**
+	 * Adds a pom property, typically one of the <code>m2e.wro4j.*</code> settings.
+	 */
+	public FixtureGenerator setProperty(String name, String value) {
+		properties.put(name, value);
+		return this;
+	}
+
+	/**
+	 * @return the pom.xml of the project generated in <code>folder</code>
+	 */
+	public File generate(File folder) throws IOException {
+		FileUtils.deleteDirectory(folder);
+		File webapp = new File(folder, "src/main/webapp");
+		write(new File(webapp, "WEB-INF/web.xml"), "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<web-app xmlns=\"http://java.sun.com/xml/ns/javaee\" version=\"3.0\">\n"
+				+ "\t<display-name>" + artifactId + "</display-name>\n"
+				+ "</web-app>\n");
+		write(new File(webapp, "WEB-INF/wro.properties"), "preProcessors=cssImport,semicolonAppender\n"
+				+ "postProcessors=cssMinJawr,jsMin\n");
+		write(new File(webapp, "css/partials/colors.css"), ".primary{color:#336699}\n.secondary{color:#996633}\n");
+
+		StringBuilder wro = new StringBuilder("<groups xmlns=\"http://www.isdc.ro/wro\">\n");
+		for (int g = 1; g <= groups; g++) {
+			String group = "group" + g;
+			wro.append("\t<group name=\"").append(group).append("\">\n")
+				.append("\t\t<css>/css/").append(group).append("/*.css</css>\n")
+				.append("\t\t<js>/js/").append(group).append("/*.js</js>\n")
+				.append("\t</group>\n");
+			for (int f = 1; f <= filesPerGroup; f++) {
+				String name = "file" + f;
+				StringBuilder css = new StringBuilder();
+				if (f == 1) {
+					css.append("@import url(\"../partials/colors.css\");\n");
+				}
+				css.append(".").append(group).append("-").append(name).append(" {\n")
+					.append("\tmargin: ").append(f).append("px;\n")
+					.append("\tpadding: ").append(g).append("px;\n")
+					.append("}\n");
+				write(new File(webapp, "css/" + group + "/" + name + ".css"), css.toString());
+				write(new File(webapp, "js/" + group + "/" + name + ".js"), "function " + group + "_" + name
+						+ "(value) {\n\tvar result = value * " + f + ";\n\treturn result + " + g + ";\n}\n");
+			}
+		}
+		write(new File(webapp, "WEB-INF/wro.xml"), wro.append("</groups>\n").toString());
+
+		StringBuilder props = new StringBuilder();
+		for (Map.Entry<String, String> property : properties.entrySet()) {
+			props.append("\t\t<").append(property.getKey()).append('>').append(property.getValue())
+				.append("</").append(property.getKey()).append(">\n");
+		}
+		File pom = new File(folder, "pom.xml");
+		write(pom, "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+				+ "\t<modelVersion>4.0.0</modelVersion>\n"
+				+ "\t<groupId>foo.bar</groupId>\n"
+				+ "\t<artifactId>" + artifactId + "</artifactId>\n"
+				+ "\t<version>0.0.1-SNAPSHOT</version>\n"
+				+ "\t<packaging>war</packaging>\n"
+				+ "\t<properties>\n" + props + "\t</properties>\n"
+				+ "\t<build>\n"
+				+ "\t\t<plugins>\n"
+				+ "\t\t\t<plugin>\n"
+				+ "\t\t\t\t<groupId>ro.isdc.wro4j</groupId>\n"
+				+ "\t\t\t\t<artifactId>wro4j-maven-plugin</artifactId>\n"
+				+ "\t\t\t\t<version>1.7.2</version>\n"
+				+ "\t\t\t\t<executions>\n"
+				+ "\t\t\t\t\t<execution>\n"
+				+ "\t\t\t\t\t\t<phase>compile</phase>\n"
+				+ "\t\t\t\t\t\t<goals>\n"
+				+ "\t\t\t\t\t\t\t<goal>run</goal>\n"
+				+ "\t\t\t\t\t\t</goals>\n"
+				+ "\t\t\t\t\t</execution>\n"
+				+ "\t\t\t\t</executions>\n"
+				+ "\t\t\t\t<configuration>\n"
+				+ "\t\t\t\t\t<destinationFolder>${project.build.directory}/${project.build.finalName}/resources</destinationFolder>\n"
+				+ "\t\t\t\t</configuration>\n"
+				+ "\t\t\t</plugin>\n"
+				+ "\t\t</plugins>\n"
+				+ "\t</build>\n"
+				+ "</project>\n");
+		return pom;
+	}
+
+	private static void write(File file, String content) throws IOException {
+		FileUtils.writeStringToFile(file, content, "UTF-8");
+	}
+}
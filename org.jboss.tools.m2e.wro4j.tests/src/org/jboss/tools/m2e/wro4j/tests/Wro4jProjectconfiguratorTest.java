@@ -7,17 +7,23 @@
  *******************************************************************************/
 package org.jboss.tools.m2e.wro4j.tests;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IWorkspaceDescription;
 import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.m2e.core.MavenPlugin;
 import org.eclipse.m2e.core.project.ResolverConfiguration;
 import org.eclipse.m2e.tests.common.AbstractMavenProjectTestCase;
 
@@ -127,6 +133,572 @@ public class Wro4jProjectconfiguratorTest extends AbstractMavenProjectTestCase {
 		assertTrue(css + " is missing", css.exists());
     }
 
+	public void testRebuildOnlyAffectedGroups() throws Exception {
+		IProject p = importProject("projects/p8/pom.xml");
+		waitForJobsToComplete();
+
+		p.build(IncrementalProjectBuilder.AUTO_BUILD, monitor);
+		waitForJobsToComplete();
+
+		IFile js = p.getFile("target/m2e-wtp/web-resources/resources/scripts.js");
+		assertTrue("scripts.js is missing", js.exists());
+		IFile css = p.getFile("target/m2e-wtp/web-resources/resources/styles.css");
+		assertTrue("styles.css is missing", css.exists());
+		long jsTimestamp = js.getLocation().toFile().lastModified();
+
+		// make sure a rewrite would change the timestamp
+		Thread.sleep(1000);
+
+		IFile style = p.getFile("src/main/webapp/css/style1.css");
+		style.setContents(new ByteArrayInputStream(".changed{color:red}".getBytes()), true, false, monitor);
+		p.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		String cssContent = getAsString(css);
+		assertTrue("styles.css should have been rebuilt : \n" + cssContent, cssContent.contains(".changed"));
+		assertEquals("scripts.js should not have been rebuilt", jsTimestamp, js.getLocation().toFile().lastModified());
+	}
+
+	public void testNoRebuildOnDescriptorFormatting() throws Exception {
+		IProject p = importProject("projects/p8/pom.xml");
+		waitForJobsToComplete();
+
+		p.build(IncrementalProjectBuilder.AUTO_BUILD, monitor);
+		waitForJobsToComplete();
+
+		IFile js = p.getFile("target/m2e-wtp/web-resources/resources/scripts.js");
+		assertTrue("scripts.js is missing", js.exists());
+		long jsTimestamp = js.getLocation().toFile().lastModified();
+
+		Thread.sleep(1000);
+
+		IFile wroXml = p.getFile("src/main/webapp/WEB-INF/wro.xml");
+		String model = getAsString(wroXml);
+		wroXml.setContents(new ByteArrayInputStream(("\n\n" + model + "\n").getBytes()), true, false, monitor);
+		p.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		assertEquals("scripts.js should not have been rebuilt", jsTimestamp, js.getLocation().toFile().lastModified());
+	}
+
+	public void testNoRebuildOnUnchangedContent() throws Exception {
+		IProject p = importProject("projects/p8/pom.xml");
+		waitForJobsToComplete();
+
+		p.build(IncrementalProjectBuilder.AUTO_BUILD, monitor);
+		waitForJobsToComplete();
+
+		IFile css = p.getFile("target/m2e-wtp/web-resources/resources/styles.css");
+		assertTrue("styles.css is missing", css.exists());
+		long cssTimestamp = css.getLocation().toFile().lastModified();
+
+		Thread.sleep(1000);
+
+		// rewrite the same bytes, like a branch switch would
+		IFile style = p.getFile("src/main/webapp/css/style1.css");
+		style.setContents(new ByteArrayInputStream(getAsString(style).getBytes()), true, false, monitor);
+		p.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		assertEquals("styles.css should not have been rebuilt", cssTimestamp, css.getLocation().toFile().lastModified());
+	}
+
+	public void testParallelGroups() throws Exception {
+		IProject p = importProject("projects/p8/pom.xml");
+		waitForJobsToComplete();
+		setPomProperty(p, "m2e.wro4j.parallel.groups", "2");
+
+		p.build(IncrementalProjectBuilder.FULL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		assertNoErrors(p);
+		IFile js = p.getFile("target/m2e-wtp/web-resources/resources/scripts.js");
+		assertTrue("scripts.js is missing", js.exists());
+		IFile css = p.getFile("target/m2e-wtp/web-resources/resources/styles.css");
+		assertTrue("styles.css is missing", css.exists());
+		String cssContent = getAsString(css);
+		assertTrue("styles.css should be minified : \n" + cssContent, cssContent.contains("body{background-color:#656565;}"));
+
+		// partitions write through the build context of the build thread, unchanged bundles are left untouched
+		long jsTimestamp = js.getLocation().toFile().lastModified();
+		long cssTimestamp = css.getLocation().toFile().lastModified();
+		Thread.sleep(1000);
+		p.build(IncrementalProjectBuilder.FULL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		assertNoErrors(p);
+		assertEquals("scripts.js should not have been rewritten", jsTimestamp, js.getLocation().toFile().lastModified());
+		assertEquals("styles.css should not have been rewritten", cssTimestamp, css.getLocation().toFile().lastModified());
+	}
+
+	public void testBackgroundRebuild() throws Exception {
+		IProject p = importProject("projects/p8/pom.xml");
+		waitForJobsToComplete();
+		setPomProperty(p, "m2e.wro4j.background.delay", "200");
+
+		p.build(IncrementalProjectBuilder.FULL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		IFile css = p.getFile("target/m2e-wtp/web-resources/resources/styles.css");
+		assertTrue("styles.css is missing", css.exists());
+
+		IFile style = p.getFile("src/main/webapp/css/style1.css");
+		style.setContents(new ByteArrayInputStream(".first{color:red}".getBytes()), true, false, monitor);
+		p.build(IncrementalProjectBuilder.AUTO_BUILD, monitor);
+		// superseded by the next change
+		style.setContents(new ByteArrayInputStream(".second{color:red}".getBytes()), true, false, monitor);
+		p.build(IncrementalProjectBuilder.AUTO_BUILD, monitor);
+
+		String cssContent = "";
+		for (int i = 0; i < 100 && !cssContent.contains(".second"); i++) {
+			Thread.sleep(100);
+			cssContent = getAsString(css);
+		}
+		assertTrue("styles.css should have been rebuilt in the background : \n" + cssContent, cssContent.contains(".second"));
+	}
+
+	public void testForegroundBuildTakesOverBackgroundRebuild() throws Exception {
+		IProject p = importProject("projects/p8/pom.xml");
+		waitForJobsToComplete();
+		setPomProperty(p, "m2e.wro4j.background.delay", "60000");
+
+		p.build(IncrementalProjectBuilder.FULL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		IFile css = p.getFile("target/m2e-wtp/web-resources/resources/styles.css");
+		assertTrue("styles.css is missing", css.exists());
+
+		// saved, then built in the foreground before the background build had a chance to run
+		IFile style = p.getFile("src/main/webapp/css/style1.css");
+		style.setContents(new ByteArrayInputStream(".saved{color:red}".getBytes()), true, false, monitor);
+		p.build(IncrementalProjectBuilder.AUTO_BUILD, monitor);
+		p.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		String cssContent = getAsString(css);
+		assertTrue("styles.css should have been rebuilt in the foreground : \n" + cssContent, cssContent.contains(".saved"));
+	}
+
+	public void testUnchangedOutputKeepsTimestamp() throws Exception {
+		IProject p = importProject("projects/p8/pom.xml");
+		waitForJobsToComplete();
+
+		p.build(IncrementalProjectBuilder.AUTO_BUILD, monitor);
+		waitForJobsToComplete();
+
+		IFile css = p.getFile("target/m2e-wtp/web-resources/resources/styles.css");
+		assertTrue("styles.css is missing", css.exists());
+		String cssContent = getAsString(css);
+		long cssTimestamp = css.getLocation().toFile().lastModified();
+
+		Thread.sleep(1000);
+
+		// same stylesheet once minified
+		IFile style = p.getFile("src/main/webapp/css/style1.css");
+		style.setContents(new ByteArrayInputStream("body{background-color:#656565;}".getBytes()), true, false, monitor);
+		p.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		assertEquals(cssContent, getAsString(css));
+		assertEquals("styles.css should keep its timestamp", cssTimestamp, css.getLocation().toFile().lastModified());
+		assertTrue("styles.css should be in sync", css.isSynchronized(IResource.DEPTH_ZERO));
+	}
+
+	public void testRebuildOnAddedAndRemovedResources() throws Exception {
+		IProject p = importProject("projects/p8/pom.xml");
+		waitForJobsToComplete();
+
+		p.build(IncrementalProjectBuilder.AUTO_BUILD, monitor);
+		waitForJobsToComplete();
+
+		IFile css = p.getFile("target/m2e-wtp/web-resources/resources/styles.css");
+		assertTrue("styles.css is missing", css.exists());
+
+		IFile style = p.getFile("src/main/webapp/css/style2.css");
+		style.create(new ByteArrayInputStream(".added{color:red}".getBytes()), true, monitor);
+		p.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		String cssContent = getAsString(css);
+		assertTrue("styles.css should contain the new stylesheet : \n" + cssContent, cssContent.contains(".added"));
+
+		style.delete(true, monitor);
+		p.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		cssContent = getAsString(css);
+		assertFalse("styles.css should not contain the deleted stylesheet : \n" + cssContent, cssContent.contains(".added"));
+	}
+
+	public void testBuildMetricsLog() throws Exception {
+		IProject p = importProject("projects/p8/pom.xml");
+		waitForJobsToComplete();
+		// scanned, but in no group
+		p.getFolder("src/main/webapp/lib").create(true, true, monitor);
+		p.getFile("src/main/webapp/lib/unused.js").create(new ByteArrayInputStream("var unused;".getBytes()), true, monitor);
+
+		p.build(IncrementalProjectBuilder.CLEAN_BUILD, monitor);
+		p.build(IncrementalProjectBuilder.FULL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		String full = getLastBuildMetrics(p);
+		assertTrue(full, full.contains("\"escalation\":\"full build\"") && full.contains("\"mojo\":"));
+		assertTrue(full, full.contains("\"filesMatched\":2"));
+
+		IFile style = p.getFile("src/main/webapp/css/style1.css");
+		style.setContents(new ByteArrayInputStream("body{color:red}".getBytes()), true, false, monitor);
+		p.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		String incremental = getLastBuildMetrics(p);
+		assertTrue(incremental, incremental.contains("\"escalation\":null") && incremental.contains("\"groupsProcessed\":1"));
+	}
+
+	public void testSharedGroups() throws Exception {
+		IProject[] projects = importProjects("projects/parent-p11", new String[]{"pom.xml", "p11a/pom.xml", "p11b/pom.xml"}, new ResolverConfiguration());
+		waitForJobsToComplete();
+		IProject a = projects[1];
+		IProject b = projects[2];
+
+		a.build(IncrementalProjectBuilder.CLEAN_BUILD, monitor);
+		b.build(IncrementalProjectBuilder.CLEAN_BUILD, monitor);
+		a.build(IncrementalProjectBuilder.FULL_BUILD, monitor);
+		b.build(IncrementalProjectBuilder.FULL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		IFile cssA = a.getFile("target/m2e-wtp/web-resources/resources/shared.css");
+		IFile cssB = b.getFile("target/m2e-wtp/web-resources/resources/shared.css");
+		assertTrue(cssA + " is missing", cssA.exists());
+		assertTrue(cssB + " is missing", cssB.exists());
+		assertEquals(getAsString(cssA), getAsString(cssB));
+		assertTrue(b.getFile("target/m2e-wtp/web-resources/resources/shared.js").exists());
+		String localCss = getAsString(b.getFile("target/m2e-wtp/web-resources/resources/local.css"));
+		assertTrue("local.css should be built : \n" + localCss, localCss.contains(".p11b"));
+
+		// a change to the shared sources reaches both projects
+		IFile common = projects[0].getFile("shared/common.css");
+		common.setContents(new ByteArrayInputStream(".common{color:red}".getBytes()), true, false, monitor);
+		a.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor);
+		b.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		String sharedCss = getAsString(cssB);
+		assertTrue("shared.css should have been rebuilt : \n" + sharedCss, sharedCss.contains("color:red"));
+		assertEquals(getAsString(cssA), sharedCss);
+	}
+
+	public void testWatchExternalContextFolder() throws Exception {
+		IWorkspaceDescription description = workspace.getDescription();
+		description.setAutoBuilding(true);
+		workspace.setDescription(description);
+
+		// the parent project isn't imported, so ../extra is outside of the workspace
+		IProject[] projects = importProjects("projects/parent-p12", new String[]{"p12/pom.xml"}, new ResolverConfiguration());
+		waitForJobsToComplete();
+		IProject p = projects[0];
+
+		p.build(IncrementalProjectBuilder.FULL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		IFile css = p.getFile("target/m2e-wtp/web-resources/resources/testCase.css");
+		assertTrue("testCase.css is missing", css.exists());
+
+		File style = new File(p.getLocation().toFile().getParentFile(), "extra/style2.css");
+		FileUtils.writeStringToFile(style, ".watched{display:hidden;}");
+
+		String cssContent = "";
+		for (int i = 0; i < 100 && !cssContent.contains(".watched"); i++) {
+			Thread.sleep(100);
+			cssContent = getAsString(css);
+		}
+		assertTrue("testCase.css should have been rebuilt : \n" + cssContent, cssContent.contains(".watched"));
+	}
+
+	public void testStreamMergeOnlyGroups() throws Exception {
+		IProject p = importProject("projects/p8/pom.xml");
+		waitForJobsToComplete();
+		setPomProperty(p, "m2e.wro4j.merge.groups", "scripts");
+
+		p.build(IncrementalProjectBuilder.CLEAN_BUILD, monitor);
+		p.build(IncrementalProjectBuilder.FULL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		IFile js = p.getFile("target/m2e-wtp/web-resources/resources/scripts.js");
+		assertTrue(js + " is missing", js.exists());
+		String source = getAsString(p.getFile("src/main/webapp/js/some.js"));
+		assertEquals("scripts should only be merged", source + "\n", getAsString(js));
+
+		IFile css = p.getFile("target/m2e-wtp/web-resources/resources/styles.css");
+		assertTrue(css + " is missing", css.exists());
+		String styles = getAsString(p.getFile("src/main/webapp/css/style1.css"));
+		assertFalse("styles should be processed by wro4j", getAsString(css).equals(styles + "\n"));
+		long cssTimestamp = css.getLocation().toFile().lastModified();
+
+		Thread.sleep(1000);
+		IFile script = p.getFile("src/main/webapp/js/some.js");
+		script.setContents(new ByteArrayInputStream("var streamed = true;".getBytes()), true, false, monitor);
+		p.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		assertEquals("scripts should only be merged", "var streamed = true;\n", getAsString(js));
+		assertEquals("styles.css should not have been rebuilt", cssTimestamp, css.getLocation().toFile().lastModified());
+	}
+
+	public void testRestoreCachedOutputs() throws Exception {
+		IProject p = importProject("projects/p8/pom.xml");
+		waitForJobsToComplete();
+		setPomProperty(p, "m2e.wro4j.output.cache", "10");
+
+		p.build(IncrementalProjectBuilder.CLEAN_BUILD, monitor);
+		p.build(IncrementalProjectBuilder.FULL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		IFile css = p.getFile("target/m2e-wtp/web-resources/resources/styles.css");
+		assertTrue(css + " is missing", css.exists());
+		String original = getAsString(css);
+		IFile js = p.getFile("target/m2e-wtp/web-resources/resources/scripts.js");
+		long jsTimestamp = js.getLocation().toFile().lastModified();
+
+		Thread.sleep(1000);
+		IFile style = p.getFile("src/main/webapp/css/style1.css");
+		String source = getAsString(style);
+		style.setContents(new ByteArrayInputStream("body{color:red}".getBytes()), true, false, monitor);
+		p.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor);
+		waitForJobsToComplete();
+		assertFalse("styles should have been rebuilt", original.equals(getAsString(css)));
+
+		// reverting the change restores the cached bundle
+		style.setContents(new ByteArrayInputStream(source.getBytes()), true, false, monitor);
+		p.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor);
+		waitForJobsToComplete();
+		assertEquals(original, getAsString(css));
+		assertEquals("scripts.js should not have been rebuilt", jsTimestamp, js.getLocation().toFile().lastModified());
+	}
+
+	public void testRebuildGroupsImportingPartial() throws Exception {
+		IProject p = importProject("projects/p15/pom.xml");
+		waitForJobsToComplete();
+
+		p.build(IncrementalProjectBuilder.CLEAN_BUILD, monitor);
+		p.build(IncrementalProjectBuilder.FULL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		IFile css = p.getFile("target/m2e-wtp/web-resources/resources/styles.css");
+		assertTrue(css + " is missing", css.exists());
+		assertTrue(getAsString(css), getAsString(css).contains("#656565"));
+		IFile other = p.getFile("target/m2e-wtp/web-resources/resources/other.css");
+		assertTrue(other + " is missing", other.exists());
+		long otherTimestamp = other.getLocation().toFile().lastModified();
+
+		Thread.sleep(1000);
+
+		// the partial isn't declared in any group, only imported by styles
+		IFile colors = p.getFile("src/main/webapp/css/partials/colors.css");
+		colors.setContents(new ByteArrayInputStream("h1{color:#ff0000}".getBytes()), true, false, monitor);
+		p.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor);
+		waitForJobsToComplete();
+		assertTrue(getAsString(css), getAsString(css).contains("#ff0000"));
+		assertEquals("other.css should not have been rebuilt", otherTimestamp, other.getLocation().toFile().lastModified());
+	}
+
+	public void testIgnoreExcludedFolders() throws Exception {
+		IProject p = importProject("projects/p8/pom.xml");
+		waitForJobsToComplete();
+
+		p.build(IncrementalProjectBuilder.CLEAN_BUILD, monitor);
+		p.build(IncrementalProjectBuilder.FULL_BUILD, monitor);
+		waitForJobsToComplete();
+		IFile css = p.getFile("target/m2e-wtp/web-resources/resources/styles.css");
+		IFile js = p.getFile("target/m2e-wtp/web-resources/resources/scripts.js");
+		long cssTimestamp = css.getLocation().toFile().lastModified();
+		long jsTimestamp = js.getLocation().toFile().lastModified();
+
+		Thread.sleep(1000);
+
+		// node_modules is excluded by default
+		p.getFolder("src/main/webapp/node_modules").create(true, true, monitor);
+		p.getFolder("src/main/webapp/node_modules/lib").create(true, true, monitor);
+		IFile lib = p.getFile("src/main/webapp/node_modules/lib/lib.css");
+		lib.create(new ByteArrayInputStream("body{color:red}".getBytes()), true, monitor);
+		p.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		assertEquals("styles.css should not have been rebuilt", cssTimestamp, css.getLocation().toFile().lastModified());
+		assertEquals("scripts.js should not have been rebuilt", jsTimestamp, js.getLocation().toFile().lastModified());
+	}
+
+	public void testWatchReferencedVendorFiles() throws Exception {
+		IProject p = importProject("projects/p8/pom.xml");
+		waitForJobsToComplete();
+
+		// node_modules is excluded by default, but a group uses one of its files
+		p.getFolder("src/main/webapp/node_modules").create(true, true, monitor);
+		p.getFolder("src/main/webapp/node_modules/lib").create(true, true, monitor);
+		IFile lib = p.getFile("src/main/webapp/node_modules/lib/lib.css");
+		lib.create(new ByteArrayInputStream("body{color:red}".getBytes()), true, monitor);
+		IFile wro = p.getFile("src/main/webapp/WEB-INF/wro.xml");
+		String descriptor = getAsString(wro).replace("</groups>",
+				"\t<group name=\"vendor\">\n\t\t<css>/node_modules/lib/lib.css</css>\n\t</group>\n</groups>");
+		wro.setContents(new ByteArrayInputStream(descriptor.getBytes()), true, false, monitor);
+		p.build(IncrementalProjectBuilder.FULL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		IFile css = p.getFile("target/m2e-wtp/web-resources/resources/vendor.css");
+		assertTrue("vendor.css is missing", css.exists());
+		assertTrue(getAsString(css), getAsString(css).contains("color:red"));
+
+		lib.setContents(new ByteArrayInputStream("body{color:blue}".getBytes()), true, false, monitor);
+		p.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		assertTrue("vendor.css should have been rebuilt : \n" + getAsString(css), getAsString(css).contains("color:blue"));
+	}
+
+	public void testSkipUnrelatedChanges() throws Exception {
+		IProject p = importProject("projects/p8/pom.xml");
+		waitForJobsToComplete();
+
+		p.build(IncrementalProjectBuilder.CLEAN_BUILD, monitor);
+		p.build(IncrementalProjectBuilder.FULL_BUILD, monitor);
+		waitForJobsToComplete();
+		IFile css = p.getFile("target/m2e-wtp/web-resources/resources/styles.css");
+		IFile js = p.getFile("target/m2e-wtp/web-resources/resources/scripts.js");
+		long cssTimestamp = css.getLocation().toFile().lastModified();
+		long jsTimestamp = js.getLocation().toFile().lastModified();
+
+		Thread.sleep(1000);
+
+		IFile notes = p.getFile("notes.txt");
+		notes.create(new ByteArrayInputStream("nothing to do with wro4j".getBytes()), true, monitor);
+		p.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		assertEquals("styles.css should not have been rebuilt", cssTimestamp, css.getLocation().toFile().lastModified());
+		assertEquals("scripts.js should not have been rebuilt", jsTimestamp, js.getLocation().toFile().lastModified());
+	}
+
+	public void testPrewarmOnConfigure() throws Exception {
+		IProject p = importProject("projects/p8/pom.xml");
+		waitForJobsToComplete();
+
+		p.build(IncrementalProjectBuilder.FULL_BUILD, monitor);
+		waitForJobsToComplete();
+		IFile css = p.getFile("target/m2e-wtp/web-resources/resources/styles.css");
+		assertTrue("styles.css is missing", css.exists());
+
+		// edited while the workspace was closed, the project being prewarmed again before the next build
+		File style = p.getFile("src/main/webapp/css/style1.css").getLocation().toFile();
+		FileUtils.writeStringToFile(style, "body {\n\tbackground-color:#336699;\n}");
+		MavenPlugin.getProjectConfigurationManager().updateProjectConfiguration(p, monitor);
+		waitForJobsToComplete();
+		p.refreshLocal(IResource.DEPTH_INFINITE, monitor);
+		p.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		String cssContent = getAsString(css);
+		assertTrue("styles.css should have been rebuilt : \n" + cssContent, cssContent.contains("#336699"));
+	}
+
+	public void testLintChangedFiles() throws Exception {
+		IProject p = importProject("projects/p16/pom.xml");
+		waitForJobsToComplete();
+
+		p.build(IncrementalProjectBuilder.CLEAN_BUILD, monitor);
+		p.build(IncrementalProjectBuilder.FULL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		// missing semicolon
+		IFile js = p.getFile("src/main/webapp/js/some.js");
+		IMarker[] markers = js.findMarkers(IMarker.PROBLEM, true, IResource.DEPTH_ZERO);
+		assertTrue("jshint problems should be reported on " + js, markers.length > 0);
+
+		js.setContents(new ByteArrayInputStream("function hello(name) {\n\talert(\"Hello \" + name);\n}\n".getBytes()), true, false, monitor);
+		p.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor);
+		waitForJobsToComplete();
+		markers = js.findMarkers(IMarker.PROBLEM, true, IResource.DEPTH_ZERO);
+		assertEquals("jshint problems should be cleared on " + js, 0, markers.length);
+	}
+
+	public void testSeparateStatePerExecution() throws Exception {
+		IProject p = importProject("projects/p17/pom.xml");
+		waitForJobsToComplete();
+
+		p.build(IncrementalProjectBuilder.FULL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		// each execution reads its own wro file
+		IFile css = p.getFile("target/m2e-wtp/web-resources/resources/styles.css");
+		assertTrue("styles.css is missing", css.exists());
+		IFile js = p.getFile("target/m2e-wtp/web-resources/resources/scripts.js");
+		assertTrue("scripts.js is missing", js.exists());
+		long jsTimestamp = js.getLocation().toFile().lastModified();
+
+		Thread.sleep(1000);
+
+		IFile style = p.getFile("src/main/webapp/css/style1.css");
+		style.setContents(new ByteArrayInputStream("body{color:red}".getBytes()), true, false, monitor);
+		p.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		String cssContent = getAsString(css);
+		assertTrue("styles.css should have been rebuilt : \n" + cssContent, cssContent.contains("color:red"));
+		assertEquals("scripts.js should not have been rebuilt", jsTimestamp, js.getLocation().toFile().lastModified());
+	}
+
+	public void testWarmEngineMatchesColdBuild() throws Exception {
+		IProject p = importProject("projects/p8/pom.xml");
+		waitForJobsToComplete();
+		setPomProperty(p, "m2e.wro4j.warm.engine", "true");
+
+		p.build(IncrementalProjectBuilder.FULL_BUILD, monitor);
+		waitForJobsToComplete();
+
+		// the first incremental build sets up the engine, the next ones reuse it
+		IFile style = p.getFile("src/main/webapp/css/style1.css");
+		IFile css = p.getFile("target/m2e-wtp/web-resources/resources/styles.css");
+		style.setContents(new ByteArrayInputStream("body{color:red}".getBytes()), true, false, monitor);
+		p.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor);
+		waitForJobsToComplete();
+		assertTrue(getAsString(css), getAsString(css).contains("color:red"));
+
+		style.setContents(new ByteArrayInputStream("body{color:blue}\n.warm{margin:0}".getBytes()), true, false, monitor);
+		p.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor);
+		waitForJobsToComplete();
+		String warmCss = getAsString(css);
+		assertTrue("styles.css should have been rebuilt : \n" + warmCss, warmCss.contains("color:blue"));
+
+		// full builds always run the mojo the usual way
+		p.build(IncrementalProjectBuilder.FULL_BUILD, monitor);
+		waitForJobsToComplete();
+		assertEquals(getAsString(css), warmCss);
+	}
+
+	/**
+	 * Sets a property in the pom of an imported project, and updates the project configuration.
+	 */
+	private void setPomProperty(IProject p, String name, String value) throws Exception {
+		IFile pom = p.getFile("pom.xml");
+		String property = "\t\t<" + name + ">" + value + "</" + name + ">\n";
+		String content = getAsString(pom);
+		content = content.contains("<properties>")
+				? content.replace("<properties>\n", "<properties>\n" + property)
+				: content.replace("\t<build>", "\t<properties>\n" + property + "\t</properties>\n\t<build>");
+		pom.setContents(new ByteArrayInputStream(content.getBytes("UTF-8")), true, false, monitor);
+		MavenPlugin.getProjectConfigurationManager().updateProjectConfiguration(p, monitor);
+		waitForJobsToComplete();
+	}
+
+	/**
+	 * @return the metrics logged by the last build of the project, as a JSON line
+	 */
+	private static String getLastBuildMetrics(IProject p) throws IOException {
+		File metricsFile = p.getWorkingLocation("org.jboss.tools.m2e.wro4j.core").append("wro4j-build-metrics.jsonl").toFile();
+		assertTrue("build metrics are missing", metricsFile.isFile());
+		@SuppressWarnings("unchecked")
+		List<String> lines = FileUtils.readLines(metricsFile, "UTF-8");
+		return lines.get(lines.size() - 1);
+	}
+
 	private void assertMinifiedFiles(IProject p) throws Exception {
 		IFile js = p.getFile("target/m2e-wtp/web-resources/resources/testCase.js");
 		assertTrue("testCase.js is missing after a clean build", js.exists());